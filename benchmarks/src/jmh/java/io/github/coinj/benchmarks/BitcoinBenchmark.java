@@ -0,0 +1,116 @@
+package io.github.coinj.benchmarks;
+
+import io.github.coinj.Coin;
+import io.github.coinj.Network;
+import io.github.coinj.PackedRawTransaction;
+import io.github.coinj.RawTransaction;
+import io.github.coinj.SignedRawTransaction;
+import io.github.coinj.chains.BitcoinChain;
+import io.github.coinj.chains.KeyIndex;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.LegacyAddress;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.params.TestNet3Params;
+import org.bitcoinj.script.ScriptBuilder;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packing and signing a payment that spends every unspent output of one P2PKH address, with the signing key hidden
+ * among other keys. Packing includes parsing the unspent outputs and coin selection; signing includes building the
+ * bitcoinj transaction.
+ */
+@State(Scope.Benchmark)
+public class BitcoinBenchmark {
+    private static final long OUTPUT_VALUE = 100_000;
+    private static final long FEE = 10_000;
+
+    @Param({"1", "10", "100", "1000"})
+    public int inputs;
+
+    @Param({"1", "100", "10000"})
+    public int keys;
+
+    private BitcoinChain chain;
+    private RawTransaction rawTx;
+    private PackedRawTransaction packedTx;
+    private List<String> keyList;
+    private KeyIndex keyIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // Deterministic keys, so every run signs the same transactions
+        keyList = new ArrayList<>(keys);
+        for (int i = 0; i < keys; i++) {
+            keyList.add(ECKey.fromPrivate(BigInteger.valueOf(1_000_003L * (i + 1))).getPrivateKeyAsHex());
+        }
+        ECKey owner = ECKey.fromPrivate(BigInteger.valueOf(1_000_003L * keys));
+        String address = LegacyAddress.fromKey(TestNet3Params.get(), owner).toString();
+        String script = Utils.HEX.encode(ScriptBuilder.createP2PKHOutputScript(owner).getProgram());
+        JSONArray unspentOutputs = new JSONArray();
+        for (int i = 0; i < inputs; i++) {
+            unspentOutputs.put(new JSONObject()
+                    .put("mintTxid", Sha256Hash.of(BigInteger.valueOf(i).toByteArray()).toString())
+                    .put("mintIndex", i % 4)
+                    .put("address", address)
+                    .put("script", script)
+                    .put("value", OUTPUT_VALUE));
+        }
+        String unspentBody = unspentOutputs.toString();
+        StubBackend backend = new StubBackend()
+                .path("/address/", path -> unspentBody)
+                .path("/fee/", path -> "{\"feerate\":0.0001,\"blocks\":1}");
+        chain = BitcoinChain.of(Network.TEST, backend.transport());
+
+        // Only spending every output pays the amount
+        long amount = inputs * OUTPUT_VALUE - FEE - OUTPUT_VALUE / 2;
+        rawTx = new RawTransaction.Builder(Coin.BTC)
+                .from(address)
+                .to("mg6QezKh6pidbDEXYFpdP7CLiGZ94k3NAz", BigDecimal.valueOf(amount, 8))
+                .fee(BigDecimal.valueOf(FEE, 8))
+                .change(address)
+                .build();
+        packedTx = chain.packTransaction(rawTx);
+        keyIndex = new KeyIndex(keyList);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        chain.getTransport().close();
+    }
+
+    @Benchmark
+    public PackedRawTransaction pack() throws IOException {
+        return chain.packTransaction(rawTx);
+    }
+
+    @Benchmark
+    public SignedRawTransaction sign() {
+        return chain.signTransaction(packedTx, keyList);
+    }
+
+    @Benchmark
+    public SignedRawTransaction signWithKeyIndex() {
+        return chain.signTransaction(packedTx, keyIndex);
+    }
+
+    // Key selection: parsing the keys and indexing them by public key hash
+    @Benchmark
+    public KeyIndex selectKeys() {
+        return new KeyIndex(keyList);
+    }
+}
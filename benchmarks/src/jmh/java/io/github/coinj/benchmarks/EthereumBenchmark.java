@@ -0,0 +1,100 @@
+package io.github.coinj.benchmarks;
+
+import io.github.coinj.Coin;
+import io.github.coinj.Network;
+import io.github.coinj.PackedRawTransaction;
+import io.github.coinj.RawTransaction;
+import io.github.coinj.SignedRawTransaction;
+import io.github.coinj.chains.AbiEncoder;
+import io.github.coinj.chains.EthereumChain;
+import org.bitcoinj.core.ECKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Packing and signing ERC20 payments to one or many recipients, the latter through the disperse contract, and
+ * building their call data alone.
+ */
+@State(Scope.Benchmark)
+public class EthereumBenchmark {
+    @Param({"1", "10", "100"})
+    public int outputs;
+
+    private EthereumChain chain;
+    private RawTransaction rawTx;
+    private PackedRawTransaction packedTx;
+    private List<String> keys;
+    private List<String> recipients;
+    private List<BigInteger> values;
+    private final AbiEncoder encoder = new AbiEncoder();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        ECKey owner = ECKey.fromPrivate(BigInteger.valueOf(1_000_003L));
+        keys = Collections.singletonList(owner.getPrivateKeyAsHex());
+        String from = EthereumChain.toAddress(owner);
+        recipients = new ArrayList<>(outputs);
+        values = new ArrayList<>(outputs);
+        RawTransaction.Builder builder = new RawTransaction.Builder(Coin.USDT).from(from);
+        for (int i = 0; i < outputs; i++) {
+            String recipient = EthereumChain.toAddress(ECKey.fromPrivate(BigInteger.valueOf(2_000_003L * (i + 1))));
+            recipients.add(recipient);
+            values.add(BigInteger.valueOf(1_000_000L + i));
+            builder.to(recipient, BigDecimal.valueOf(1_000_000L + i, 6));
+        }
+        rawTx = builder.build();
+
+        StubBackend backend = new StubBackend()
+                .method("eth_getTransactionCount", call -> "0x5")
+                .method("eth_gasPrice", call -> "0x3b9aca00")
+                .method("eth_estimateGas", call -> "0xea60");
+        chain = EthereumChain.of(Network.MAIN, backend.transport());
+        packedTx = chain.packTransaction(rawTx);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        chain.getTransport().close();
+    }
+
+    @Benchmark
+    public PackedRawTransaction pack() throws Exception {
+        PackedRawTransaction packed = chain.packTransaction(rawTx);
+        // Keeps the nonce manager from counting up over millions of invocations
+        chain.releaseNonce(packed);
+        return packed;
+    }
+
+    @Benchmark
+    public SignedRawTransaction sign() {
+        return chain.signTransaction(packedTx, keys);
+    }
+
+    // The same call data pack builds: transfer(to, value) or disperseToken(token, recipients, values)
+    @Benchmark
+    public byte[] callData() {
+        encoder.reset();
+        if (outputs == 1) {
+            encoder.selector(AbiEncoder.TRANSFER).address(recipients.get(0)).uint256(values.get(0));
+        } else {
+            encoder.selector(AbiEncoder.DISPERSE_TOKEN)
+                    .address(EthereumChain.USDT_CONTRACT)
+                    .uint256(3 * AbiEncoder.WORD)
+                    .uint256(3 * AbiEncoder.WORD + AbiEncoder.arraySize(outputs))
+                    .addressArray(recipients)
+                    .uint256Array(values);
+        }
+        return encoder.toByteArray();
+    }
+}
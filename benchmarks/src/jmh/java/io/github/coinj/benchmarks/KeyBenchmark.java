@@ -0,0 +1,88 @@
+package io.github.coinj.benchmarks;
+
+import io.github.coinj.KeyPair;
+import io.github.coinj.Network;
+import io.github.coinj.chains.BitcoinChain;
+import io.github.coinj.chains.EthereumChain;
+import io.github.coinj.chains.HdAccount;
+import org.bitcoinj.core.ECKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Key generation, HD address derivation and multisig migration addresses.
+ */
+@State(Scope.Benchmark)
+public class KeyBenchmark {
+    private static final int DERIVATION_BATCH = 1000;
+
+    @Param({"3", "15"})
+    public int multisigKeys;
+
+    private BitcoinChain bitcoin;
+    private EthereumChain ethereum;
+    private HdAccount bitcoinAccount;
+    private HdAccount ethereumAccount;
+    private List<String> keys;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bitcoin = new BitcoinChain(Network.MAIN, "http://stub.invalid", BitcoinChain.AddressType.P2WPKH);
+        ethereum = new EthereumChain(Network.MAIN, "http://stub.invalid");
+        byte[] seed = new byte[64];
+        Arrays.fill(seed, (byte) 7);
+        bitcoinAccount = bitcoin.createHdAccount(seed, 0);
+        ethereumAccount = ethereum.createHdAccount(seed, 0);
+        keys = new ArrayList<>(multisigKeys);
+        for (int i = 0; i < multisigKeys; i++) {
+            keys.add(ECKey.fromPrivate(BigInteger.valueOf(1_000_003L * (i + 1))).getPrivateKeyAsHex());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        bitcoin.getTransport().close();
+        ethereum.getTransport().close();
+    }
+
+    @Benchmark
+    public KeyPair generateBitcoinKeyPair() {
+        return bitcoin.generateKeyPair();
+    }
+
+    @Benchmark
+    public KeyPair generateEthereumKeyPair() {
+        return ethereum.generateKeyPair();
+    }
+
+    @Benchmark
+    public String deriveBitcoinAddress() {
+        return bitcoinAccount.getAddress(index++ & 0x7fffffff);
+    }
+
+    @Benchmark
+    public String deriveEthereumAddress() {
+        return ethereumAccount.getAddress(index++ & 0x7fffffff);
+    }
+
+    @Benchmark
+    public List<String> deriveBitcoinAddresses() {
+        return bitcoinAccount.getAddresses(HdAccount.RECEIVE, 0, DERIVATION_BATCH);
+    }
+
+    @Benchmark
+    public String migrate() {
+        return bitcoin.migrate(keys, (multisigKeys + 1) / 2);
+    }
+}
@@ -0,0 +1,95 @@
+package io.github.coinj.benchmarks;
+
+import io.github.coinj.chains.HttpTransport;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Answers a chain's calls in process, so benchmarks measure the library and not a network. REST calls are answered
+ * by path prefix and JSON-RPC calls, single or batched, by method.
+ */
+class StubBackend implements Interceptor {
+    private static final String URL = "http://stub.invalid";
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    private final Map<String, Function<String, String>> paths = new HashMap<>();
+    private final Map<String, Function<JSONObject, Object>> methods = new HashMap<>();
+
+    StubBackend path(String prefix, Function<String, String> handler) {
+        paths.put(prefix, handler);
+        return this;
+    }
+
+    StubBackend method(String method, Function<JSONObject, Object> handler) {
+        methods.put(method, handler);
+        return this;
+    }
+
+    HttpTransport transport() {
+        return new HttpTransport.Builder().endpoint(URL).interceptor(this).build();
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String body = request.body() == null ? null : readBody(request);
+        String reply = request.method().equals("POST") && request.url().encodedPath().equals("/")
+                ? rpc(body)
+                : rest(request.url().encodedPath() + (request.url().encodedQuery() == null ? "" : "?" + request.url().encodedQuery()), body);
+        return new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .body(ResponseBody.create(reply, JSON))
+                .build();
+    }
+
+    private static String readBody(Request request) throws IOException {
+        Buffer buffer = new Buffer();
+        request.body().writeTo(buffer);
+        return buffer.readUtf8();
+    }
+
+    private String rest(String path, String body) {
+        for (Map.Entry<String, Function<String, String>> entry : paths.entrySet()) {
+            if (path.startsWith(entry.getKey())) {
+                return entry.getValue().apply(body == null ? path : body);
+            }
+        }
+        throw new IllegalStateException("No stub for " + path);
+    }
+
+    private String rpc(String body) {
+        Object request = new JSONTokener(body).nextValue();
+        if (request instanceof JSONArray) {
+            JSONArray replies = new JSONArray();
+            for (Object call : (JSONArray) request) {
+                replies.put(answer((JSONObject) call));
+            }
+            return replies.toString();
+        }
+        return answer((JSONObject) request).toString();
+    }
+
+    private JSONObject answer(JSONObject call) {
+        Function<JSONObject, Object> handler = methods.get(call.getString("method"));
+        if (handler == null) {
+            throw new IllegalStateException("No stub for " + call.getString("method"));
+        }
+        return new JSONObject().put("jsonrpc", "2.0").put("id", call.get("id")).put("result", handler.apply(call));
+    }
+}
@@ -0,0 +1,197 @@
+package io.github.coinj;
+
+import com.google.common.base.Preconditions;
+import com.google.common.math.LongMath;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Objects;
+
+/**
+ * A non-negative amount in the smallest unit of a coin (satoshi, wei, ...), with the number of decimals of that
+ * coin. Amounts that fit in a long, which covers every bitcoin amount, are held as a primitive; larger ones, such as
+ * wei, fall back to a BigInteger of at most 256 bits. Conversions never round: anything that would lose precision
+ * throws an ArithmeticException.
+ */
+public final class Amount implements Comparable<Amount> {
+    public static final int MAX_BITS = 256;
+
+    private final long units;
+    private final BigInteger bigUnits;
+    private final int decimals;
+
+    private Amount(long units, BigInteger bigUnits, int decimals) {
+        this.units = units;
+        this.bigUnits = bigUnits;
+        this.decimals = decimals;
+    }
+
+    public static Amount ofUnits(long units, int decimals) {
+        Preconditions.checkArgument(units >= 0, "Negative amount");
+        Preconditions.checkArgument(decimals >= 0, "Negative decimals");
+        return new Amount(units, null, decimals);
+    }
+
+    public static Amount ofUnits(BigInteger units, int decimals) {
+        Preconditions.checkArgument(units.signum() >= 0, "Negative amount");
+        Preconditions.checkArgument(decimals >= 0, "Negative decimals");
+        if (units.bitLength() < Long.SIZE) {
+            return new Amount(units.longValue(), null, decimals);
+        }
+        if (units.bitLength() > MAX_BITS) {
+            throw new ArithmeticException("Amount overflows " + MAX_BITS + " bits");
+        }
+        return new Amount(0, units, decimals);
+    }
+
+    /**
+     * Converts a decimal amount into units of a coin with the given decimals.
+     */
+    public static Amount of(BigDecimal amount, int decimals) {
+        return ofUnits(amount.movePointRight(decimals).toBigIntegerExact(), decimals);
+    }
+
+    /**
+     * Keeps as many decimals as the value is written with.
+     */
+    public static Amount of(BigDecimal amount) {
+        BigDecimal value = amount.scale() < 0 ? amount.setScale(0) : amount;
+        return ofUnits(value.unscaledValue(), value.scale());
+    }
+
+    public int getDecimals() {
+        return decimals;
+    }
+
+    public boolean fitsInLong() {
+        return bigUnits == null;
+    }
+
+    public long longUnits() {
+        if (bigUnits != null) {
+            throw new ArithmeticException("Amount does not fit in a long");
+        }
+        return units;
+    }
+
+    public long longUnits(int decimals) {
+        return withDecimals(decimals).longUnits();
+    }
+
+    public BigInteger toBigInteger() {
+        return bigUnits != null ? bigUnits : BigInteger.valueOf(units);
+    }
+
+    public BigInteger toBigInteger(int decimals) {
+        return withDecimals(decimals).toBigInteger();
+    }
+
+    public BigDecimal toBigDecimal() {
+        return new BigDecimal(toBigInteger(), decimals);
+    }
+
+    public Amount withDecimals(int decimals) {
+        if (decimals == this.decimals) {
+            return this;
+        }
+        if (decimals > this.decimals && bigUnits == null) {
+            try {
+                long factor = LongMath.checkedPow(10, decimals - this.decimals);
+                return new Amount(LongMath.checkedMultiply(units, factor), null, decimals);
+            } catch (ArithmeticException ignored) {
+                // falls back to BigInteger
+            }
+        }
+        BigInteger rescaled;
+        if (decimals > this.decimals) {
+            rescaled = toBigInteger().multiply(BigInteger.TEN.pow(decimals - this.decimals));
+        } else {
+            BigInteger[] quotient = toBigInteger().divideAndRemainder(BigInteger.TEN.pow(this.decimals - decimals));
+            if (quotient[1].signum() != 0) {
+                throw new ArithmeticException("Amount has more than " + decimals + " decimals");
+            }
+            rescaled = quotient[0];
+        }
+        return ofUnits(rescaled, decimals);
+    }
+
+    public Amount add(Amount other) {
+        int scale = Math.max(decimals, other.decimals);
+        Amount left = withDecimals(scale);
+        Amount right = other.withDecimals(scale);
+        if (left.bigUnits == null && right.bigUnits == null) {
+            try {
+                return new Amount(LongMath.checkedAdd(left.units, right.units), null, scale);
+            } catch (ArithmeticException ignored) {
+                // falls back to BigInteger
+            }
+        }
+        return ofUnits(left.toBigInteger().add(right.toBigInteger()), scale);
+    }
+
+    public Amount subtract(Amount other) {
+        int scale = Math.max(decimals, other.decimals);
+        Amount left = withDecimals(scale);
+        Amount right = other.withDecimals(scale);
+        if (left.bigUnits == null && right.bigUnits == null) {
+            return ofUnits(left.units - right.units, scale);
+        }
+        return ofUnits(left.toBigInteger().subtract(right.toBigInteger()), scale);
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(decimals);
+        if (bigUnits == null) {
+            out.writeByte(0);
+            out.writeLong(units);
+        } else {
+            byte[] bytes = bigUnits.toByteArray();
+            out.writeByte(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    public static Amount readFrom(DataInput in) throws IOException {
+        int decimals = in.readUnsignedByte();
+        int length = in.readUnsignedByte();
+        if (length == 0) {
+            return ofUnits(in.readLong(), decimals);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return ofUnits(new BigInteger(bytes), decimals);
+    }
+
+    public boolean isZero() {
+        return bigUnits == null && units == 0;
+    }
+
+    @Override
+    public int compareTo(Amount other) {
+        if (decimals == other.decimals && bigUnits == null && other.bigUnits == null) {
+            return Long.compare(units, other.units);
+        }
+        return toBigDecimal().compareTo(other.toBigDecimal());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Amount amount = (Amount) o;
+        return units == amount.units && decimals == amount.decimals && Objects.equals(bigUnits, amount.bigUnits);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(units, bigUnits, decimals);
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+}
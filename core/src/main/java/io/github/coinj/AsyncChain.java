@@ -0,0 +1,44 @@
+package io.github.coinj;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+public interface AsyncChain {
+    CompletableFuture<PackedRawTransaction> packTransactionAsync(RawTransaction rawTransaction);
+    CompletableFuture<SignedRawTransaction> signTransactionAsync(PackedRawTransaction transaction, List<String> keys);
+
+    CompletableFuture<String> sendTransactionAsync(SignedRawTransaction transaction);
+
+    /**
+     * Whether the backend knows the transaction, in its mempool or in a block. Fails when the chain cannot tell.
+     */
+    default CompletableFuture<Boolean> hasTransactionAsync(String txId) {
+        CompletableFuture<Boolean> known = new CompletableFuture<>();
+        known.completeExceptionally(new UnsupportedOperationException("Transaction lookup is not supported"));
+        return known;
+    }
+
+    /**
+     * Broadcasts all transactions concurrently; the returned future never fails, errors are reported per transaction.
+     */
+    default CompletableFuture<List<SendResult>> sendTransactionsAsync(List<SignedRawTransaction> transactions) {
+        List<CompletableFuture<SendResult>> results = new ArrayList<>(transactions.size());
+        for (SignedRawTransaction transaction : transactions) {
+            results.add(sendTransactionAsync(transaction).handle((txId, e) -> {
+                if (e != null) {
+                    return SendResult.failure(transaction, e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                }
+                return SendResult.success(transaction, txId);
+            }));
+        }
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            List<SendResult> sent = new ArrayList<>(results.size());
+            for (CompletableFuture<SendResult> result : results) {
+                sent.add(result.join());
+            }
+            return sent;
+        });
+    }
+}
@@ -1,6 +1,7 @@
 package io.github.coinj;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 
@@ -12,4 +13,20 @@ public interface Chain {
     SignedRawTransaction signTransaction(PackedRawTransaction transaction, List<String> keys);
 
     String sendTransaction(SignedRawTransaction transaction) throws IOException;
-}
\ No newline at end of file
+
+    /**
+     * Broadcasts every transaction and reports each one's hash or error, in the order given. A failed transaction
+     * does not stop the others.
+     */
+    default List<SendResult> sendTransactions(List<SignedRawTransaction> transactions) throws IOException {
+        List<SendResult> results = new ArrayList<>(transactions.size());
+        for (SignedRawTransaction transaction : transactions) {
+            try {
+                results.add(SendResult.success(transaction, sendTransaction(transaction)));
+            } catch (IOException | RuntimeException e) {
+                results.add(SendResult.failure(transaction, e));
+            }
+        }
+        return results;
+    }
+}
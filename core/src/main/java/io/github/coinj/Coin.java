@@ -1,5 +1,17 @@
 package io.github.coinj;
 
 public enum Coin {
-    BTC, ETH, USDT
-}
\ No newline at end of file
+    BTC(8), ETH(18), USDT(6),
+    // Any token, named by the contract of the transaction; amounts are rescaled to the decimals of the token
+    ERC20(18);
+
+    private final int decimals;
+
+    Coin(int decimals) {
+        this.decimals = decimals;
+    }
+
+    public int getDecimals() {
+        return decimals;
+    }
+}
@@ -0,0 +1,25 @@
+package io.github.coinj;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Chain specific state produced when packing a transaction and consumed when signing it. A packed transaction writes
+ * the {@link #getTag() tag} of its data ahead of it and reads it back with the {@link Reader} of that tag. Readers are
+ * listed in {@code META-INF/services/io.github.coinj.PackedData$Reader}; a tag none is listed for is rejected.
+ */
+public interface PackedData {
+    byte BITCOIN = 1;
+    byte ETHEREUM = 2;
+
+    byte getTag();
+
+    void writeTo(DataOutput out) throws IOException;
+
+    interface Reader {
+        byte getTag();
+
+        PackedData readFrom(DataInput in) throws IOException;
+    }
+}
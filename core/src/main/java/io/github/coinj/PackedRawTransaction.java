@@ -1,20 +1,143 @@
 package io.github.coinj;
 
+import com.google.common.base.Preconditions;
+
+import java.io.*;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.ServiceLoader;
 
 public class PackedRawTransaction extends RawTransaction {
-    private Map<String, Object> extra = new HashMap<>();
+    private static final int FORMAT_VERSION = 3;
+
+    private PackedData data;
 
     public PackedRawTransaction(RawTransaction rawTransaction) {
         super(rawTransaction.getInputs(), rawTransaction.getOutputs(), rawTransaction.getFee(), rawTransaction.getChange());
+        setCoin(rawTransaction.getCoin());
+        setContract(rawTransaction.getContract());
+        if (rawTransaction instanceof PackedRawTransaction) {
+            data = ((PackedRawTransaction) rawTransaction).data;
+        }
+    }
+
+    public PackedData getData() {
+        return data;
+    }
+
+    public <T extends PackedData> T getData(Class<T> type) {
+        Preconditions.checkState(type.isInstance(data), "Transaction is not packed with " + type.getSimpleName());
+        return type.cast(data);
+    }
+
+    public void setData(PackedData data) {
+        this.data = data;
+    }
+
+    /**
+     * Compact binary form, used to hand packed transactions over to an offline signer.
+     */
+    public byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            writeTo(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        out.writeByte(getCoin().ordinal());
+        out.writeInt(getInputs().size());
+        for (Input input : getInputs()) {
+            out.writeUTF(input.getAddress());
+        }
+        out.writeInt(getOutputs().size());
+        for (Output output : getOutputs()) {
+            out.writeUTF(output.getAddress());
+            output.getAmount().writeTo(out);
+        }
+        out.writeBoolean(getFee() != null);
+        if (getFee() != null) {
+            getFee().writeTo(out);
+        }
+        out.writeBoolean(getChange() != null);
+        if (getChange() != null) {
+            out.writeUTF(getChange());
+        }
+        out.writeBoolean(getContract() != null);
+        if (getContract() != null) {
+            out.writeUTF(getContract());
+        }
+        out.writeBoolean(data != null);
+        if (data != null) {
+            out.writeByte(data.getTag());
+            data.writeTo(out);
+        }
     }
 
-    public Object getExtra(String key) {
-        return extra.get(key);
+    public static PackedRawTransaction fromByteArray(byte[] bytes) {
+        try {
+            return readFrom(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed packed transaction", e);
+        }
     }
 
-    public void setExtra(String key, Object value) {
-        extra.put(key, value);
+    public static PackedRawTransaction readFrom(DataInput in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported packed transaction version " + version);
+        }
+        Coin coin = Coin.values()[in.readUnsignedByte()];
+        int inputCount = in.readInt();
+        List<Input> inputs = new ArrayList<>(inputCount);
+        for (int i = 0; i < inputCount; i++) {
+            inputs.add(new Input(in.readUTF()));
+        }
+        int outputCount = in.readInt();
+        List<Output> outputs = new ArrayList<>(outputCount);
+        for (int i = 0; i < outputCount; i++) {
+            outputs.add(new Output(in.readUTF(), Amount.readFrom(in)));
+        }
+        Amount fee = in.readBoolean() ? Amount.readFrom(in) : null;
+        String change = in.readBoolean() ? in.readUTF() : null;
+        String contract = in.readBoolean() ? in.readUTF() : null;
+
+        RawTransaction rawTransaction = new RawTransaction(inputs, outputs, fee, change);
+        rawTransaction.setCoin(coin);
+        rawTransaction.setContract(contract);
+        PackedRawTransaction packedTx = new PackedRawTransaction(rawTransaction);
+        if (in.readBoolean()) {
+            packedTx.setData(readData(in.readByte(), in));
+        }
+        return packedTx;
+    }
+
+    private static PackedData readData(byte tag, DataInput in) throws IOException {
+        PackedData.Reader reader = Readers.BY_TAG.get(tag);
+        if (reader == null) {
+            throw new IOException("Unknown packed data tag " + tag);
+        }
+        return reader.readFrom(in);
+    }
+
+    // Loaded once from the class path, the bytes of a transaction only ever pick one of these
+    private static class Readers {
+        private static final Map<Byte, PackedData.Reader> BY_TAG = load();
+
+        private static Map<Byte, PackedData.Reader> load() {
+            Map<Byte, PackedData.Reader> readers = new HashMap<>();
+            for (PackedData.Reader reader : ServiceLoader.load(PackedData.Reader.class, PackedData.class.getClassLoader())) {
+                PackedData.Reader other = readers.putIfAbsent(reader.getTag(), reader);
+                Preconditions.checkState(other == null, "Packed data tag %s is read by both %s and %s",
+                        reader.getTag(), other == null ? null : other.getClass().getName(), reader.getClass().getName());
+            }
+            return readers;
+        }
     }
 }
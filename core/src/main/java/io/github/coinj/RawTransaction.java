@@ -8,18 +8,19 @@ public class RawTransaction {
     private List<Input> inputs;
     private List<Output> outputs;
 
-    private BigDecimal fee;
+    private Amount fee;
     private String change;
 
     private Coin coin;
+    private String contract;
 
-    public RawTransaction(List<Input> inputs, List<Output> outputs, BigDecimal fee) {
+    public RawTransaction(List<Input> inputs, List<Output> outputs, Amount fee) {
         this.inputs = inputs;
         this.outputs = outputs;
         this.fee = fee;
     }
 
-    public RawTransaction(List<Input> inputs, List<Output> outputs, BigDecimal fee, String change) {
+    public RawTransaction(List<Input> inputs, List<Output> outputs, Amount fee, String change) {
         this.inputs = inputs;
         this.outputs = outputs;
         this.fee = fee;
@@ -50,11 +51,11 @@ public class RawTransaction {
         this.change = change;
     }
 
-    public BigDecimal getFee() {
+    public Amount getFee() {
         return fee;
     }
 
-    public void setFee(BigDecimal fee) {
+    public void setFee(Amount fee) {
         this.fee = fee;
     }
 
@@ -66,6 +67,14 @@ public class RawTransaction {
         this.coin = coin;
     }
 
+    public String getContract() {
+        return contract;
+    }
+
+    public void setContract(String contract) {
+        this.contract = contract;
+    }
+
     public static class Input {
         private String address;
 
@@ -84,13 +93,17 @@ public class RawTransaction {
 
     public static class Output {
         private String address;
-        private BigDecimal amount;
+        private Amount amount;
 
-        public Output(String address, BigDecimal amount) {
+        public Output(String address, Amount amount) {
             this.address = address;
             this.amount = amount;
         }
 
+        public Output(String address, BigDecimal amount) {
+            this(address, Amount.of(amount));
+        }
+
         public String getAddress() {
             return address;
         }
@@ -99,11 +112,11 @@ public class RawTransaction {
             this.address = address;
         }
 
-        public BigDecimal getAmount() {
+        public Amount getAmount() {
             return amount;
         }
 
-        public void setAmount(BigDecimal amount) {
+        public void setAmount(Amount amount) {
             this.amount = amount;
         }
     }
@@ -111,10 +124,13 @@ public class RawTransaction {
     public static class Builder {
         private final List<Input> inputs = new ArrayList<>();
         private final List<Output> outputs = new ArrayList<>();
-        private BigDecimal fee;
+        private Amount fee;
         private String change;
-        private Coin coin;
+        private final Coin coin;
+        private String contract;
+
         public Builder(Coin coin) {
+            this.coin = coin;
         }
 
         public Builder from(String address) {
@@ -128,16 +144,22 @@ public class RawTransaction {
         }
 
         public Builder to(String address, BigDecimal amount) {
-            outputs.add(new Output(address, amount));
+            outputs.add(new Output(address, Amount.of(amount, coin.getDecimals())));
             return this;
         }
 
         public Builder addOutput(String address, BigDecimal amount) {
-            outputs.add(new Output(address, amount));
-            return this;
+            return to(address, amount);
         }
 
         public Builder fee(BigDecimal amount) {
+            // Fees are always paid in the native coin of the chain
+            this.fee = Amount.of(amount, coin == Coin.BTC ? Coin.BTC.getDecimals() : Coin.ETH.getDecimals());
+            return this;
+        }
+
+        public Builder contract(String contract) {
+            this.contract = contract;
             return this;
         }
 
@@ -147,7 +169,10 @@ public class RawTransaction {
         }
 
         public RawTransaction build() {
-            return new RawTransaction(inputs, outputs, fee, change);
+            RawTransaction rawTransaction = new RawTransaction(inputs, outputs, fee, change);
+            rawTransaction.setCoin(coin);
+            rawTransaction.setContract(contract);
+            return rawTransaction;
         }
     }
 }
@@ -0,0 +1,45 @@
+package io.github.coinj;
+
+/**
+ * Outcome of broadcasting one transaction of a batch: either its hash or the error the backend answered with.
+ */
+public class SendResult {
+    private final SignedRawTransaction transaction;
+    private final String txId;
+    private final Throwable error;
+
+    private SendResult(SignedRawTransaction transaction, String txId, Throwable error) {
+        this.transaction = transaction;
+        this.txId = txId;
+        this.error = error;
+    }
+
+    public static SendResult success(SignedRawTransaction transaction, String txId) {
+        return new SendResult(transaction, txId, null);
+    }
+
+    public static SendResult failure(SignedRawTransaction transaction, Throwable error) {
+        return new SendResult(transaction, null, error);
+    }
+
+    public SignedRawTransaction getTransaction() {
+        return transaction;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    public String getTxId() {
+        return txId;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return isSuccess() ? "SendResult: " + txId : "SendResult: " + transaction.getTxId() + " failed: " + error;
+    }
+}
@@ -1,29 +1,34 @@
 package io.github.coinj;
 
-import org.json.JSONObject;
+import java.nio.ByteBuffer;
 
 public class SignedRawTransaction extends PackedRawTransaction {
-    private JSONObject rawTx;
+    private final byte[] rawTx;
+    private final String txId;
 
-    public SignedRawTransaction(RawTransaction rawTransaction, JSONObject rawTx) {
+    public SignedRawTransaction(RawTransaction rawTransaction, byte[] rawTx, String txId) {
         super(rawTransaction);
         this.rawTx = rawTx;
+        this.txId = txId;
     }
 
     public Boolean isSigned() {
-        return rawTx == null;
+        return rawTx != null;
     }
 
-    public JSONObject getRawTx() {
-        return rawTx;
+    /**
+     * The serialized signed transaction, shared rather than copied.
+     */
+    public ByteBuffer getRawTx() {
+        return ByteBuffer.wrap(rawTx).asReadOnlyBuffer();
     }
 
-    public void setRawTx(JSONObject rawTx) {
-        this.rawTx = rawTx;
+    public String getTxId() {
+        return txId;
     }
 
     @Override
     public String toString() {
-        return "SignedTransaction: " + rawTx;
+        return "SignedTransaction: " + txId;
     }
 }
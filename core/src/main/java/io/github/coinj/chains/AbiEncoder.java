@@ -0,0 +1,140 @@
+package io.github.coinj.chains;
+
+import com.google.common.base.Preconditions;
+import io.github.coinj.Amount;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes Solidity ABI call data straight into a growable byte array that is reused from call to call. Addresses are
+ * parsed from their hex characters in place and amounts that fit in a long never go through BigInteger bytes, so
+ * encoding a call allocates nothing but the final copy.
+ */
+public class AbiEncoder {
+    public static final int WORD = 32;
+
+    public static final int TRANSFER = 0xa9059cbb;
+    public static final int DISPERSE_ETHER = 0xe63d38ed;
+    public static final int DISPERSE_TOKEN = 0xc73a2d60;
+    public static final int DECIMALS = 0x313ce567;
+    public static final int SYMBOL = 0x95d89b41;
+
+    private byte[] buffer;
+    private int size;
+
+    public AbiEncoder() {
+        this(4 + 4 * WORD);
+    }
+
+    public AbiEncoder(int capacity) {
+        buffer = new byte[capacity];
+    }
+
+    public AbiEncoder reset() {
+        size = 0;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Grows the buffer once for a call whose size is known up front.
+     */
+    public AbiEncoder reserve(int bytes) {
+        ensureCapacity(bytes);
+        return this;
+    }
+
+    public AbiEncoder selector(int selector) {
+        ensureCapacity(4);
+        buffer[size++] = (byte) (selector >>> 24);
+        buffer[size++] = (byte) (selector >>> 16);
+        buffer[size++] = (byte) (selector >>> 8);
+        buffer[size++] = (byte) selector;
+        return this;
+    }
+
+    public AbiEncoder address(CharSequence address) {
+        int start = address.length() >= 2 && address.charAt(0) == '0' && (address.charAt(1) == 'x' || address.charAt(1) == 'X') ? 2 : 0;
+        Preconditions.checkArgument(address.length() - start == 40, "Invalid address %s", address);
+        int word = word();
+        for (int i = 0; i < 20; i++) {
+            int high = Character.digit(address.charAt(start + 2 * i), 16);
+            int low = Character.digit(address.charAt(start + 2 * i + 1), 16);
+            Preconditions.checkArgument(high >= 0 && low >= 0, "Invalid address %s", address);
+            buffer[word + 12 + i] = (byte) (high << 4 | low);
+        }
+        return this;
+    }
+
+    public AbiEncoder uint256(long value) {
+        Preconditions.checkArgument(value >= 0, "Negative uint256");
+        int word = word();
+        for (int i = 0; i < 8; i++) {
+            buffer[word + WORD - 1 - i] = (byte) (value >>> (8 * i));
+        }
+        return this;
+    }
+
+    public AbiEncoder uint256(BigInteger value) {
+        Preconditions.checkArgument(value.signum() >= 0 && value.bitLength() <= 256, "Not a uint256: %s", value);
+        if (value.bitLength() < Long.SIZE) {
+            return uint256(value.longValue());
+        }
+        byte[] bytes = value.toByteArray();
+        int length = Math.min(bytes.length, WORD);
+        int word = word();
+        System.arraycopy(bytes, bytes.length - length, buffer, word + WORD - length, length);
+        return this;
+    }
+
+    public AbiEncoder uint256(Amount amount) {
+        return amount.fitsInLong() ? uint256(amount.longUnits()) : uint256(amount.toBigInteger());
+    }
+
+    public AbiEncoder addressArray(List<String> addresses) {
+        uint256(addresses.size());
+        for (String address : addresses) {
+            address(address);
+        }
+        return this;
+    }
+
+    public AbiEncoder uint256Array(List<BigInteger> values) {
+        uint256(values.size());
+        for (BigInteger value : values) {
+            uint256(value);
+        }
+        return this;
+    }
+
+    /**
+     * Size in bytes of a dynamic array of static elements, to compute the offsets of the arrays that follow it.
+     */
+    public static int arraySize(int length) {
+        return WORD + length * WORD;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    // Reserves a zeroed word and returns its offset
+    private int word() {
+        ensureCapacity(WORD);
+        int word = size;
+        Arrays.fill(buffer, word, word + WORD, (byte) 0);
+        size += WORD;
+        return word;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+}
@@ -1,17 +1,121 @@
 package io.github.coinj.chains;
 
+import com.google.common.base.Preconditions;
+import io.github.coinj.AsyncChain;
 import io.github.coinj.Chain;
+import io.github.coinj.SendResult;
+import io.github.coinj.SignedRawTransaction;
 import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
+import okhttp3.RequestBody;
 
-import java.util.concurrent.TimeUnit;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+public abstract class AbstractChain implements Chain, AsyncChain {
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = HttpTransport.DEFAULT_MAX_CONCURRENT_REQUESTS;
 
-public abstract class AbstractChain implements Chain {
-    protected static final OkHttpClient client = new OkHttpClient.Builder()
-            .connectTimeout(300, TimeUnit.SECONDS)
-            .writeTimeout(300, TimeUnit.SECONDS)
-            .readTimeout(300, TimeUnit.SECONDS)
-            .build();
     protected static final MediaType JSON
             = MediaType.parse("application/json; charset=utf-8");
+
+    // Each chain has its own transport by default, and with it its own connection pool and dispatcher,
+    // so one chain cannot flood its backend or starve the others
+    protected final HttpTransport transport;
+    protected volatile MetricsListener metrics = MetricsListener.NONE;
+
+    protected AbstractChain(HttpTransport transport) {
+        this.transport = transport;
+    }
+
+    public HttpTransport getTransport() {
+        return transport;
+    }
+
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        transport.setMaxConcurrentRequests(maxConcurrentRequests);
+    }
+
+    public MetricsListener getMetricsListener() {
+        return metrics;
+    }
+
+    /**
+     * Reports the chain's stages and its transport's requests to the listener.
+     */
+    public void setMetricsListener(MetricsListener metrics) {
+        this.metrics = Preconditions.checkNotNull(metrics);
+        transport.setMetricsListener(metrics);
+    }
+
+    // Times the stage from the call until its future completes
+    protected <T> CompletableFuture<T> timed(MetricsListener.Stage stage, Supplier<CompletableFuture<T>> call) {
+        MetricsListener metrics = this.metrics;
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            metrics.onStage(stage, System.nanoTime() - start, e);
+            throw e;
+        }
+        future.whenComplete((value, e) -> metrics.onStage(stage, System.nanoTime() - start,
+                e instanceof CompletionException && e.getCause() != null ? e.getCause() : e));
+        return future;
+    }
+
+    protected <T> T timedSync(MetricsListener.Stage stage, Supplier<T> call) {
+        MetricsListener metrics = this.metrics;
+        long start = System.nanoTime();
+        try {
+            T value = call.get();
+            metrics.onStage(stage, System.nanoTime() - start, null);
+            return value;
+        } catch (RuntimeException e) {
+            metrics.onStage(stage, System.nanoTime() - start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public List<SendResult> sendTransactions(List<SignedRawTransaction> transactions) throws IOException {
+        return await(sendTransactionsAsync(transactions));
+    }
+
+    protected CompletableFuture<String> get(String path) {
+        return transport.get(path);
+    }
+
+    protected <T> CompletableFuture<T> get(String path, HttpTransport.BodyParser<T> parser) {
+        return transport.get(path, parser);
+    }
+
+    protected CompletableFuture<String> post(String path, RequestBody body) {
+        return transport.post(path, body);
+    }
+
+    protected static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
 }
@@ -0,0 +1,98 @@
+package io.github.coinj.chains;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Addresses of one chain of an {@link HdAccount} handed out in order, with a lookahead of derived but not yet issued
+ * addresses. Once the lookahead falls to half it is topped up in one parallel bulk derivation. Every derived address
+ * can be looked up, so deposits to issued addresses and to the lookahead are recognized alike.
+ */
+public class AddressPool {
+    public static final int DEFAULT_LOOKAHEAD = 1000;
+
+    private final HdAccount account;
+    private final int chain;
+    private final int lookahead;
+    private final List<String> addresses = new ArrayList<>();
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private int issued;
+
+    public AddressPool(HdAccount account) {
+        this(account, HdAccount.RECEIVE, 0, DEFAULT_LOOKAHEAD);
+    }
+
+    /**
+     * @param issued number of addresses handed out before, for instance before a restart
+     */
+    public AddressPool(HdAccount account, int chain, int issued, int lookahead) {
+        Preconditions.checkArgument(issued >= 0, "Negative issued count");
+        Preconditions.checkArgument(lookahead > 0, "Lookahead must be positive");
+        this.account = Preconditions.checkNotNull(account);
+        this.chain = chain;
+        this.issued = issued;
+        this.lookahead = lookahead;
+        derive(issued + lookahead);
+    }
+
+    public synchronized String next() {
+        return next(1).get(0);
+    }
+
+    public synchronized List<String> next(int count) {
+        Preconditions.checkArgument(count >= 0, "Negative count");
+        if (addresses.size() - issued - count < lookahead / 2) {
+            derive(issued + count + lookahead);
+        }
+        List<String> next = new ArrayList<>(addresses.subList(issued, issued + count));
+        issued += count;
+        return next;
+    }
+
+    /**
+     * Returns the index of a derived address, issued or not, or -1.
+     */
+    public synchronized int indexOf(String address) {
+        Integer index = indexes.get(address);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Marks everything up to the address as issued, as when a deposit arrives at an address of the lookahead
+     * that another instance handed out.
+     */
+    public synchronized void markIssued(String address) {
+        int index = indexOf(address);
+        if (index >= issued) {
+            next(index + 1 - issued);
+        }
+    }
+
+    public synchronized int getIssued() {
+        return issued;
+    }
+
+    public synchronized int getDerived() {
+        return addresses.size();
+    }
+
+    public HdAccount getAccount() {
+        return account;
+    }
+
+    public int getChain() {
+        return chain;
+    }
+
+    private void derive(int size) {
+        int from = addresses.size();
+        for (String address : account.getAddresses(chain, from, size - from)) {
+            indexes.put(address, addresses.size());
+            addresses.add(address);
+        }
+    }
+}
@@ -2,29 +2,41 @@ package io.github.coinj.chains;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 import io.github.coinj.*;
 import io.github.coinj.Coin;
 import io.github.coinj.RawTransaction;
-import okhttp3.Request;
+import io.github.coinj.chains.selection.CoinSelection;
+import io.github.coinj.chains.selection.CoinSelectionParams;
+import io.github.coinj.chains.selection.CoinSelector;
 import okhttp3.RequestBody;
-import okhttp3.Response;
+import okhttp3.ResponseBody;
 import org.bitcoinj.core.*;
+import org.bitcoinj.crypto.DeterministicKey;
 import org.bitcoinj.crypto.TransactionSignature;
 import org.bitcoinj.params.MainNetParams;
 import org.bitcoinj.params.TestNet3Params;
 import org.bitcoinj.script.Script;
 import org.bitcoinj.script.ScriptBuilder;
+import org.bitcoinj.script.ScriptException;
 import org.bitcoinj.script.ScriptPattern;
 import org.bouncycastle.pqc.math.linearalgebra.ByteUtils;
 import org.json.JSONObject;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 import static org.bitcoinj.script.ScriptOpCodes.OP_CHECKMULTISIG;
 
@@ -32,14 +44,52 @@ public class BitcoinChain extends AbstractChain {
     public final static String MAINNET_URL = "https://api.bitcore.io/api/BTC/mainnet";
     public final static String TESTNET_URL = "https://api.bitcore.io/api/BTC/testnet";
 
-    private final static BigDecimal DUST_THRESHOLD = new BigDecimal(2730).movePointLeft(8);
+    private final static long DUST_THRESHOLD = 2730;
+    // Answers of bitcoind, which bitcore passes on, to a transaction it already has
+    private final static String[] ALREADY_KNOWN = {
+            "already in block chain", "txn-already-in-mempool", "txn-already-known", "outputs already in utxo set"
+    };
+
 
     private NetworkParameters netParams = MainNetParams.get();
-    private String url;
+    private final AddressType addressType;
+
+    private final ConcurrentMap<String, CompletableFuture<List<UnspentOutput>>> unspentOutputsInFlight = new ConcurrentHashMap<>();
+    private UtxoCache utxoCache;
+    private CoinSelector coinSelector = CoinSelector.defaultSelector();
+    private ForkJoinPool signingPool = ForkJoinPool.commonPool();
+    // Satoshis per virtual byte by confirmation target
+    private FeeOracle<Double> feeOracle = new RefreshingFeeOracle<>(this::fetchFeeRate);
+    private int confirmationTarget = 1;
 
     public static final List<Coin> COINS = ImmutableList.of(Coin.BTC, Coin.ETH);
 
+    public enum AddressType {
+        P2PKH(44), P2SH_P2WPKH(49), P2WPKH(84);
+
+        private final int purpose;
+
+        AddressType(int purpose) {
+            this.purpose = purpose;
+        }
+
+        // The BIP44 purpose of accounts of this address type: BIP44, BIP49 or BIP84
+        public int getPurpose() {
+            return purpose;
+        }
+    }
+
     public BitcoinChain(Network network, String url) {
+        this(network, url, AddressType.P2PKH);
+    }
+
+    public BitcoinChain(Network network, String url, AddressType addressType) {
+        this(network, HttpTransport.of(url), addressType);
+    }
+
+    // A factory rather than an overload, so a null url keeps resolving to the constructors above
+    private BitcoinChain(Network network, HttpTransport transport, AddressType addressType) {
+        super(transport);
         switch (network) {
             case MAIN:
                 netParams = MainNetParams.get();
@@ -48,39 +98,127 @@ public class BitcoinChain extends AbstractChain {
                 netParams = TestNet3Params.get();
                 break;
         }
-        this.url = url;
+        this.addressType = addressType;
+    }
+
+    public static BitcoinChain of(Network network, HttpTransport transport) {
+        return of(network, transport, AddressType.P2PKH);
+    }
+
+    public static BitcoinChain of(Network network, HttpTransport transport, AddressType addressType) {
+        return new BitcoinChain(network, Preconditions.checkNotNull(transport), addressType);
+    }
+
+    public UtxoCache getUtxoCache() {
+        return utxoCache;
+    }
+
+    public void setUtxoCache(UtxoCache utxoCache) {
+        this.utxoCache = utxoCache;
+    }
+
+    public CoinSelector getCoinSelector() {
+        return coinSelector;
+    }
+
+    public void setCoinSelector(CoinSelector coinSelector) {
+        this.coinSelector = Preconditions.checkNotNull(coinSelector);
+    }
+
+    public FeeOracle<Double> getFeeOracle() {
+        return feeOracle;
+    }
+
+    public void setFeeOracle(FeeOracle<Double> feeOracle) {
+        this.feeOracle = Preconditions.checkNotNull(feeOracle);
+    }
+
+    public int getConfirmationTarget() {
+        return confirmationTarget;
+    }
+
+    public void setConfirmationTarget(int confirmationTarget) {
+        Preconditions.checkArgument(confirmationTarget > 0, "Confirmation target must be positive");
+        this.confirmationTarget = confirmationTarget;
+    }
+
+    public ForkJoinPool getSigningPool() {
+        return signingPool;
+    }
+
+    public void setSigningPool(ForkJoinPool signingPool) {
+        this.signingPool = Preconditions.checkNotNull(signingPool);
     }
 
     @Override
     public KeyPair generateKeyPair(String secret) {
+        return generateKeyPair(secret, addressType);
+    }
+
+    public KeyPair generateKeyPair(String secret, AddressType addressType) {
         ECKey ecKey = ECKey.fromPrivate(ByteUtils.fromHexString(secret));
-        return new KeyPair(secret, Address.fromKey(netParams, ecKey, Script.ScriptType.P2PKH).toString());
+        return new KeyPair(secret, toAddress(ecKey, addressType).toString());
+    }
+
+    public Address toAddress(ECKey ecKey, AddressType addressType) {
+        switch (addressType) {
+            case P2WPKH:
+                return SegwitAddress.fromKey(netParams, ecKey);
+            case P2SH_P2WPKH:
+                return LegacyAddress.fromScriptHash(netParams, Utils.sha256hash160(KeyIndex.redeemScript(ecKey).getProgram()));
+            default:
+                return LegacyAddress.fromKey(netParams, ecKey);
+        }
     }
 
     @Override
     public KeyPair generateKeyPair() {
-        return generateKeyPair(new ECKey().getPrivateKeyAsHex());
+        ECKey ecKey = new ECKey();
+        return new KeyPair(ecKey.getPrivateKeyAsHex(), toAddress(ecKey, addressType).toString());
+    }
+
+    /**
+     * Returns account m/purpose'/coinType'/account' of the seed, the purpose following the chain's address type.
+     */
+    public HdAccount createHdAccount(byte[] seed, int account) {
+        int coinType = netParams.getId().equals(NetworkParameters.ID_MAINNET) ? 0 : 1;
+        return createHdAccount(HdAccount.accountKey(seed, addressType.getPurpose(), coinType, account));
+    }
+
+    /**
+     * Returns the account of a serialized extended key; a public one gives a watching account.
+     */
+    public HdAccount createHdAccount(String extendedKey) {
+        return createHdAccount(DeterministicKey.deserializeB58(extendedKey, netParams));
+    }
+
+    public HdAccount createHdAccount(DeterministicKey accountKey) {
+        AddressType addressType = this.addressType;
+        return new HdAccount(accountKey, ecKey -> toAddress(ecKey, addressType).toString());
+    }
+
+    private static long satoshis(Amount amount) {
+        return amount.longUnits(Coin.BTC.getDecimals());
     }
 
     private BitcoinTransaction toBitcoinTx(RawTransaction rawTransaction, List<UnspentOutput> unspentOutputs) {
-        BigDecimal totalInputAmount = new BigDecimal(0);
+        long totalInputAmount = 0;
         for (UnspentOutput output : unspentOutputs) {
-            BigDecimal amount = BigDecimal.valueOf(output.getValue()).movePointLeft(8);
-            totalInputAmount = totalInputAmount.add(amount);
+            totalInputAmount = Math.addExact(totalInputAmount, output.getValue());
         }
 
-        BigDecimal totalOutputAmount = new BigDecimal(0);
+        long totalOutputAmount = 0;
         for (RawTransaction.Output output : rawTransaction.getOutputs()) {
-            totalOutputAmount = totalOutputAmount.add(output.getAmount());
+            totalOutputAmount = Math.addExact(totalOutputAmount, satoshis(output.getAmount()));
         }
 
-        if (totalInputAmount.compareTo(totalOutputAmount) < 1) {
+        if (totalInputAmount <= totalOutputAmount) {
             throw new RuntimeException("INSUFFICIENT FUNDS");
         }
 
-        BigDecimal fee = BigDecimal.ZERO;
+        long fee = 0;
         if (rawTransaction.getFee() != null) {
-            fee = rawTransaction.getFee();
+            fee = satoshis(rawTransaction.getFee());
         }
 
         BitcoinTransaction bitcoinTx = new BitcoinTransaction(netParams);
@@ -89,111 +227,389 @@ public class BitcoinChain extends AbstractChain {
             bitcoinTx.addInput(new TransactionInput(netParams, bitcoinTx, ByteUtils.fromHexString(output.getScript()), outPoint, org.bitcoinj.core.Coin.valueOf(output.getValue())));
         }
         for (RawTransaction.Output output : rawTransaction.getOutputs()) {
-            Long satoshi = output.getAmount().movePointRight(8).longValue();
-            bitcoinTx.addOutput(org.bitcoinj.core.Coin.valueOf(satoshi), Address.fromString(netParams, output.getAddress()));
+            bitcoinTx.addOutput(org.bitcoinj.core.Coin.valueOf(satoshis(output.getAmount())), Address.fromString(netParams, output.getAddress()));
         }
 
-        BigDecimal changeAmount = totalInputAmount.subtract(totalOutputAmount.add(fee));
-        if (changeAmount.compareTo(DUST_THRESHOLD) > -1) {
+        long changeAmount = totalInputAmount - totalOutputAmount - fee;
+        if (changeAmount >= DUST_THRESHOLD) {
             Preconditions.checkNotNull(rawTransaction.getChange(), "Not found change address");
-            bitcoinTx.addOutput(org.bitcoinj.core.Coin.valueOf(changeAmount.movePointRight(8).longValue()), Address.fromString(netParams, rawTransaction.getChange()));
+            bitcoinTx.addOutput(org.bitcoinj.core.Coin.valueOf(changeAmount), Address.fromString(netParams, rawTransaction.getChange()));
         }
         return bitcoinTx;
     }
 
-    private BigDecimal calcFee(RawTransaction rawTransaction, List<UnspentOutput> unspentOutputs) throws IOException {
-        Request request = new Request.Builder()
-                .url(this.url + "/fee/1")
-                .build();
-        Response response = client.newCall(request).execute();
-        JSONObject data = new JSONObject(Objects.requireNonNull(response.body()).string());
-        BigDecimal feeRate = BigDecimal.valueOf(data.getDouble("feerate"));
+    private static String feePath(int target) {
+        return "/fee/" + target;
+    }
 
-        BigDecimal total = new BigDecimal(0);
-        for (UnspentOutput output : unspentOutputs) {
-            BigDecimal amount = BigDecimal.valueOf(output.getValue()).movePointLeft(8);
-            total = total.add(amount);
+    private static final String TIP_PATH = "/block/tip";
+
+    private static String unspentPath(String address) {
+        return "/address/" + address + "?unspent=true";
+    }
+
+    // Parsed straight off the socket, large address histories never exist as one string
+    private static List<UnspentOutput> parseUnspentOutputs(ResponseBody body) throws IOException {
+        return UtxoSet.parse(body.charStream());
+    }
+
+    // Concurrent lookups of the same address share one request; the returned list must not be modified
+    private CompletableFuture<List<UnspentOutput>> fetchUnspentOutputs(String address) {
+        UtxoCache cache = this.utxoCache;
+        if (cache != null) {
+            List<UnspentOutput> cached = cache.get(address);
+            if (cached != null) {
+                metrics.onUnspentOutputs(cached.size(), true);
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+        CompletableFuture<List<UnspentOutput>> future = new CompletableFuture<>();
+        CompletableFuture<List<UnspentOutput>> inFlight = unspentOutputsInFlight.putIfAbsent(address, future);
+        if (inFlight != null) {
+            return inFlight;
+        }
+        // A transaction sent while the request runs leaves the fetched outputs out of date for the cache
+        long version = cache != null ? cache.getVersion(address) : 0;
+        getUnspentOutputs(address).whenComplete((unspentOutputs, e) -> {
+            unspentOutputsInFlight.remove(address, future);
+            if (e != null) {
+                future.completeExceptionally(e);
+            } else {
+                if (cache != null) {
+                    cache.put(address, unspentOutputs, version);
+                }
+                future.complete(unspentOutputs);
+            }
+        });
+        return future;
+    }
+
+    private CompletableFuture<List<UnspentOutput>> getUnspentOutputs(String address) {
+        return timed(MetricsListener.Stage.FETCH_UNSPENT_OUTPUTS, () -> get(unspentPath(address), BitcoinChain::parseUnspentOutputs))
+                .thenApply(unspentOutputs -> {
+                    metrics.onUnspentOutputs(unspentOutputs.size(), false);
+                    return unspentOutputs;
+                });
+    }
+
+    public CompletableFuture<Long> fetchTipHeight() {
+        return timed(MetricsListener.Stage.FETCH_TIP, () -> get(TIP_PATH)).thenApply(body -> new JSONObject(body).getLong("height"));
+    }
+
+    /**
+     * Brings the store up to the backend's tip and returns the height it is synced at. bitcore has no per block view
+     * of an address, so once the tip moves past the store's height the watched addresses are fetched again and only
+     * the differences are written; until then only addresses that were never loaded or went stale are fetched.
+     */
+    public CompletableFuture<Long> syncUtxoStore(MappedUtxoStore store) {
+        return fetchTipHeight().thenCompose(height -> {
+            Queue<String> addresses = new ConcurrentLinkedQueue<>(store.addressesToSync(height));
+            // A request's deadline runs from when it is made, so no more fetches are started than the transport
+            // runs at once; each takes the next address when it is done
+            int workers = Math.min(transport.getMaxConcurrentRequests(), addresses.size());
+            List<CompletableFuture<Void>> fetches = new ArrayList<>(workers);
+            for (int i = 0; i < workers; i++) {
+                fetches.add(syncAddresses(store, addresses));
+            }
+            return CompletableFuture.allOf(fetches.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+                // A failed fetch leaves the height alone, so the next sync fetches everything again
+                if (height > store.getSyncedHeight()) {
+                    store.setSyncedHeight(height);
+                }
+                return store.getSyncedHeight();
+            });
+        });
+    }
+
+    private CompletableFuture<Void> syncAddresses(MappedUtxoStore store, Queue<String> addresses) {
+        String address = addresses.poll();
+        if (address == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long version = store.getVersion(address);
+        return getUnspentOutputs(address)
+                .thenAccept(unspentOutputs -> store.put(address, unspentOutputs, version))
+                .thenCompose(ignored -> syncAddresses(store, addresses));
+    }
+
+    // bitcore reports BTC per kilobyte
+    private static double parseFeeRate(String feeBody) {
+        JSONObject data = new JSONObject(feeBody);
+        return BigDecimal.valueOf(data.getDouble("feerate")).movePointRight(8 - 3).doubleValue();
+    }
+
+    private CompletableFuture<Double> fetchFeeRate(int target) {
+        return timed(MetricsListener.Stage.FETCH_FEE, () -> get(feePath(target))).thenApply(BitcoinChain::parseFeeRate);
+    }
+
+    private static int inputSize(UnspentOutput output) {
+        return TransactionSizeEstimator.inputVsize(output.getScriptType());
+    }
+
+    /**
+     * Everything but the inputs' own weight: the overhead, the outputs and, in a segwit transaction, the empty
+     * witness of each legacy input.
+     */
+    private static int baseWeight(List<UnspentOutput> inputs, int outputCount, int outputsWeight) {
+        int legacyInputs = 0;
+        for (UnspentOutput input : inputs) {
+            if (!TransactionSizeEstimator.isSegwit(input.getScriptType())) {
+                legacyInputs++;
+            }
+        }
+        boolean segwit = legacyInputs < inputs.size();
+        return TransactionSizeEstimator.overheadWeight(inputs.size(), outputCount, segwit) + outputsWeight + (segwit ? legacyInputs : 0);
+    }
+
+    private CoinSelection selectCoins(RawTransaction rawTransaction, List<UnspentOutput> unspentOutputs, double feeRate) {
+        long target = 0;
+        for (RawTransaction.Output output : rawTransaction.getOutputs()) {
+            target = Math.addExact(target, satoshis(output.getAmount()));
+        }
+        // The change output is always counted, it only makes a difference to the count at 253 outputs
+        int outputCount = rawTransaction.getOutputs().size() + 1;
+        int outputsWeight = 0;
+        for (RawTransaction.Output output : rawTransaction.getOutputs()) {
+            outputsWeight += 4 * TransactionSizeEstimator.outputSize(Address.fromString(netParams, output.getAddress()));
+        }
+        Script.ScriptType changeType = rawTransaction.getChange() == null
+                ? Script.ScriptType.P2PKH
+                : Address.fromString(netParams, rawTransaction.getChange()).getOutputScriptType();
+
+        // Selection starts from the overhead of one legacy input and corrects it from the inputs it picked
+        int baseSize = TransactionSizeEstimator.vsize(TransactionSizeEstimator.overheadWeight(1, outputCount, false) + outputsWeight);
+        CoinSelectionParams.Builder params = new CoinSelectionParams.Builder()
+                .target(target)
+                .baseSize(baseSize)
+                .changeOutputSize(TransactionSizeEstimator.outputSize(changeType))
+                .changeSpendSize(TransactionSizeEstimator.inputVsize(changeType))
+                .dustThreshold(DUST_THRESHOLD)
+                .inputSize(BitcoinChain::inputSize);
+        if (rawTransaction.getFee() != null) {
+            params.fixedFee(satoshis(rawTransaction.getFee()));
+        } else {
+            params.feeRate(feeRate);
+        }
+        CoinSelection selection = coinSelector.select(unspentOutputs, params.build());
+        while (selection != null) {
+            int selectedBaseSize = TransactionSizeEstimator.vsize(baseWeight(selection.getSelected(), outputCount, outputsWeight));
+            if (selectedBaseSize <= baseSize) {
+                break;
+            }
+            // The selected inputs cost more overhead than assumed, so the fee is worked out again and, if they
+            // no longer cover it, selected again. The overhead only grows, so this ends.
+            baseSize = selectedBaseSize;
+            CoinSelectionParams corrected = params.baseSize(baseSize).build();
+            CoinSelection completed = corrected.complete(selection.getSelected());
+            selection = completed != null ? completed : coinSelector.select(unspentOutputs, corrected);
+        }
+        if (selection == null) {
+            throw new RuntimeException("INSUFFICIENT FUNDS");
         }
-        BitcoinTransaction bitcoinTx = toBitcoinTx(rawTransaction, unspentOutputs);
-        return feeRate.multiply(BigDecimal.valueOf(bitcoinTx.getMessageSizeForPriorityCalc()));
+        return selection;
+    }
+
+    private void checkCoin(RawTransaction rawTransaction) {
+        Preconditions.checkArgument(BitcoinChain.COINS.contains(rawTransaction.getCoin()), "Unsupported " + rawTransaction.getCoin().toString() + "for Bitcoin Chain");
     }
 
     @Override
     public PackedRawTransaction packTransaction(RawTransaction rawTransaction) throws IOException {
-        Preconditions.checkArgument(BitcoinChain.COINS.contains(rawTransaction.getCoin()), "Unsupported " + rawTransaction.getCoin().toString() + "for Bitcoin Chain");
+        return await(packTransactionAsync(rawTransaction));
+    }
 
-        List<UnspentOutput> unspentOutputs = new ArrayList<>();
-        PackedRawTransaction packedTx = new PackedRawTransaction(rawTransaction);
+    @Override
+    public CompletableFuture<PackedRawTransaction> packTransactionAsync(RawTransaction rawTransaction) {
+        checkCoin(rawTransaction);
+        return timed(MetricsListener.Stage.PACK, () -> pack(rawTransaction));
+    }
+
+    private CompletableFuture<PackedRawTransaction> pack(RawTransaction rawTransaction) {
+
+        Set<String> addresses = new LinkedHashSet<>();
         for (RawTransaction.Input input : rawTransaction.getInputs()) {
-            Request request = new Request.Builder()
-                    .url(this.url + "/address/" + input.getAddress() + "?unspent=true")
-                    .build();
-            Response response = client.newCall(request).execute();
-            Gson gson = new Gson();
-            unspentOutputs.addAll(gson.fromJson(Objects.requireNonNull(response.body()).string(), new TypeToken<ArrayList<UnspentOutput>>(){}.getType()));
+            addresses.add(input.getAddress());
+        }
+        List<CompletableFuture<List<UnspentOutput>>> responses = new ArrayList<>();
+        for (String address : addresses) {
+            responses.add(fetchUnspentOutputs(address));
         }
-        packedTx.setExtra("utxo", unspentOutputs);
+        // The fee rate does not depend on the inputs, so fetch it alongside them
+        CompletableFuture<Double> feeRate = rawTransaction.getFee() == null
+                ? feeOracle.getFee(confirmationTarget)
+                : CompletableFuture.completedFuture(0.0);
 
-        if (rawTransaction.getFee() == null) {
-            BigDecimal fee = calcFee(rawTransaction, unspentOutputs);
-            packedTx.setFee(fee);
+        return CompletableFuture.allOf(responses.toArray(new CompletableFuture[0])).thenCombine(feeRate, (ignored, rate) -> {
+            List<UnspentOutput> unspentOutputs = new ArrayList<>();
+            for (CompletableFuture<List<UnspentOutput>> response : responses) {
+                unspentOutputs.addAll(response.join());
+            }
+            CoinSelection selection = selectCoins(rawTransaction, unspentOutputs, rate);
+            PackedRawTransaction packedTx = new PackedRawTransaction(rawTransaction);
+            packedTx.setData(new BitcoinPackedData(selection.getSelected()));
+            if (rawTransaction.getFee() == null) {
+                packedTx.setFee(Amount.ofUnits(selection.getFee(), Coin.BTC.getDecimals()));
+            }
+            return packedTx;
+        });
+    }
+
+    private static class SignedInput {
+        private final Script scriptSig;
+        private final TransactionWitness witness;
+
+        SignedInput(Script scriptSig, TransactionWitness witness) {
+            this.scriptSig = scriptSig;
+            this.witness = witness;
         }
-        return packedTx;
     }
 
-    private List<ECKey> selectKeys(String address, List<String> keys) {
-        List<ECKey> selectedKeys = new ArrayList<>();
-        for (String key : keys) {
-            ECKey ecKey = ECKey.fromPrivate(ByteUtils.fromHexString(key));
-            Address addr = Address.fromString(netParams, address);
-            Address keyAddr = Address.fromKey(netParams, ecKey, addr.getOutputScriptType());
+    private SignedInput signInput(Transaction bitcoinTx, SignatureHasher hasher, int index, KeyIndex keys) {
+        TransactionInput input = bitcoinTx.getInput(index);
+        Script scriptPubKey = new Script(input.getScriptBytes());
+        boolean isP2PK = ScriptPattern.isP2PK(scriptPubKey);
+        boolean isP2WPKH = ScriptPattern.isP2WPKH(scriptPubKey);
+        boolean isP2SH = ScriptPattern.isP2SH(scriptPubKey);
+        if (!isP2PK && !isP2WPKH && !isP2SH && !ScriptPattern.isP2PKH(scriptPubKey)) {
+            return null;
+        }
+        ECKey ecKey = keys.findByScript(scriptPubKey);
+        Preconditions.checkArgument(ecKey != null, "Not found key for input " + index);
 
-            if (addr.toString().equals(keyAddr.toString())) {
-                selectedKeys.add(ecKey);
-                return selectedKeys;
-            }
+        if (isP2WPKH || isP2SH) {
+            byte[] scriptCode = ScriptBuilder.createP2PKHOutputScript(ecKey).getProgram();
+            Sha256Hash hash = hasher.hashForWitnessSignature(index, scriptCode, input.getValue());
+            TransactionSignature txSig = new TransactionSignature(ecKey.sign(hash), Transaction.SigHash.ALL, false);
+            Script scriptSig = isP2SH
+                    ? new ScriptBuilder().data(KeyIndex.redeemScript(ecKey).getProgram()).build()
+                    : ScriptBuilder.createEmpty();
+            return new SignedInput(scriptSig, TransactionWitness.redeemP2WPKH(txSig, ecKey));
         }
-        return selectedKeys;
+        Sha256Hash hash = hasher.hashForSignature(index, scriptPubKey.getProgram());
+        TransactionSignature txSig = new TransactionSignature(ecKey.sign(hash), Transaction.SigHash.ALL, false);
+        Script scriptSig = isP2PK ? ScriptBuilder.createInputScript(txSig) : ScriptBuilder.createInputScript(txSig, ecKey);
+        return new SignedInput(scriptSig, TransactionWitness.EMPTY);
     }
 
     @Override
     public SignedRawTransaction signTransaction(PackedRawTransaction transaction, List<String> keys) {
-        List<UnspentOutput> unspentOutputs = (List<UnspentOutput>) transaction.getExtra("utxo");
+        return signTransaction(transaction, new KeyIndex(keys));
+    }
+
+    public SignedRawTransaction signTransaction(PackedRawTransaction transaction, KeyIndex keys) {
+        return timedSync(MetricsListener.Stage.SIGN, () -> sign(transaction, keys));
+    }
+
+    private SignedRawTransaction sign(PackedRawTransaction transaction, KeyIndex keys) {
+        MetricsListener metrics = this.metrics;
+        List<UnspentOutput> unspentOutputs = transaction.getData(BitcoinPackedData.class).getUnspentOutputs();
         BitcoinTransaction bitcoinTx = toBitcoinTx(transaction, unspentOutputs);
-        for (int i = 0; i < bitcoinTx.getInputs().size(); i++) {
-            TransactionInput input = bitcoinTx.getInput(i);
-            List<ECKey> ecKeys = selectKeys(unspentOutputs.get(i).getAddress(), keys);
-            ECKey ecKey = ecKeys.get(0);
-            Sha256Hash hash = bitcoinTx.hashForSignature(i, new Script(input.getScriptBytes()), org.bitcoinj.core.Transaction.SigHash.ALL, false);
-            ECKey.ECDSASignature ecSig = ecKey.sign(hash);
-            TransactionSignature txSig = new TransactionSignature(ecSig, org.bitcoinj.core.Transaction.SigHash.ALL, false);
-
-            Script scriptPubKey = new Script(input.getScriptBytes());
-            if (ScriptPattern.isP2PK(scriptPubKey)) {
-                input.setScriptSig(ScriptBuilder.createInputScript(txSig));
-            } else {
-                if (!ScriptPattern.isP2PKH(scriptPubKey)) {
-                    return null;
-                }
-                input.setScriptSig(ScriptBuilder.createInputScript(txSig, ecKey));
+        SignatureHasher hasher = new SignatureHasher(bitcoinTx);
+        int size = bitcoinTx.getInputs().size();
+        // Sighashes only read the unsigned transaction, so inputs are signed in parallel and the scripts set afterwards
+        SignedInput[] signedInputs = new SignedInput[size];
+        signingPool.submit(() -> IntStream.range(0, size).parallel().forEach(i -> {
+            long start = System.nanoTime();
+            signedInputs[i] = signInput(bitcoinTx, hasher, i, keys);
+            metrics.onInputSigned(System.nanoTime() - start);
+        })).join();
+        for (int i = 0; i < size; i++) {
+            if (signedInputs[i] == null) {
+                return null;
             }
+            TransactionInput input = bitcoinTx.getInput(i);
+            input.setScriptSig(signedInputs[i].scriptSig);
+            input.setWitness(signedInputs[i].witness);
         }
+        byte[] rawTx = bitcoinTx.bitcoinSerialize();
+        metrics.onTransactionSigned(rawTx.length, size, bitcoinTx.getOutputs().size());
+        return new SignedRawTransaction(transaction, rawTx, bitcoinTx.getTxId().toString());
+    }
+
+    @Override
+    public CompletableFuture<SignedRawTransaction> signTransactionAsync(PackedRawTransaction transaction, List<String> keys) {
+        return CompletableFuture.supplyAsync(() -> signTransaction(transaction, keys));
+    }
+
+    private static RequestBody sendBody(SignedRawTransaction transaction) {
         // {"rawTx":"02....00"}
-        JSONObject rawTx = new JSONObject();
-        rawTx.put("rawTx", ByteUtils.toHexString(bitcoinTx.bitcoinSerialize()));
-        return new SignedRawTransaction(transaction, rawTx);
+        return new HexRequestBody(JSON, "{\"rawTx\":\"", transaction.getRawTx(), "\"}");
     }
 
     @Override
     public String sendTransaction(SignedRawTransaction transaction) throws IOException {
-        RequestBody body = RequestBody.create(transaction.getRawTx().toString(), JSON);
-        Request request = new Request.Builder()
-                .url(this.url + "/tx/send")
-                .post(body)
-                .build();
-        Response response = client.newCall(request).execute();
-        JSONObject data = new JSONObject(Objects.requireNonNull(response.body()).string());
-        return data.getString("txid");
+        return await(sendTransactionAsync(transaction));
+    }
+
+    @Override
+    public CompletableFuture<String> sendTransactionAsync(SignedRawTransaction transaction) {
+        return timed(MetricsListener.Stage.BROADCAST, () -> post("/tx/send", sendBody(transaction)).handle((body, e) -> {
+            if (e == null) {
+                return new JSONObject(body).getString("txid");
+            }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (isAlreadyKnown(cause)) {
+                // Sent before, by this process or before a crash
+                return transaction.getTxId();
+            }
+            throw new CompletionException(cause);
+        })).thenApply(txId -> {
+            UtxoCache cache = this.utxoCache;
+            if (cache != null) {
+                updateUtxoCache(cache, transaction);
+            }
+            return txId;
+        });
+    }
+
+    private static boolean isAlreadyKnown(Throwable error) {
+        String message = String.valueOf(error.getMessage()).toLowerCase();
+        for (String known : ALREADY_KNOWN) {
+            if (message.contains(known)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> hasTransactionAsync(String txId) {
+        return get("/tx/" + txId).handle((body, e) -> {
+            if (e == null) {
+                return true;
+            }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof IOException && String.valueOf(cause.getMessage()).startsWith("HTTP 404 ")) {
+                return false;
+            }
+            throw new CompletionException(cause);
+        });
+    }
+
+    private void updateUtxoCache(UtxoCache cache, SignedRawTransaction transaction) {
+        if (!(transaction.getData() instanceof BitcoinPackedData)) {
+            for (RawTransaction.Input input : transaction.getInputs()) {
+                cache.invalidate(input.getAddress());
+            }
+            return;
+        }
+        List<UnspentOutput> spent = ((BitcoinPackedData) transaction.getData()).getUnspentOutputs();
+        ByteBuffer rawTx = transaction.getRawTx();
+        byte[] payload = new byte[rawTx.remaining()];
+        rawTx.get(payload);
+        Transaction bitcoinTx = new Transaction(netParams, payload);
+        String txId = transaction.getTxId();
+        List<UnspentOutput> created = new ArrayList<>();
+        for (TransactionOutput output : bitcoinTx.getOutputs()) {
+            Script scriptPubKey = output.getScriptPubKey();
+            try {
+                String address = scriptPubKey.getToAddress(netParams).toString();
+                created.add(new UnspentOutput(txId, output.getIndex(), address, ByteUtils.toHexString(scriptPubKey.getProgram()), output.getValue().getValue()));
+            } catch (ScriptException e) {
+                // Not an address output, nothing to cache
+            }
+        }
+        cache.update(spent, created);
     }
 
     public String migrate(List<String> keys, int requiredConfirmations) {
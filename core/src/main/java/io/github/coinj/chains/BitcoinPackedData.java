@@ -0,0 +1,70 @@
+package io.github.coinj.chains;
+
+import io.github.coinj.PackedData;
+import org.bitcoinj.core.Utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class BitcoinPackedData implements PackedData {
+    private final List<UnspentOutput> unspentOutputs;
+
+    public BitcoinPackedData(List<UnspentOutput> unspentOutputs) {
+        this.unspentOutputs = Collections.unmodifiableList(new ArrayList<>(unspentOutputs));
+    }
+
+    public List<UnspentOutput> getUnspentOutputs() {
+        return unspentOutputs;
+    }
+
+    @Override
+    public byte getTag() {
+        return BITCOIN;
+    }
+
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(unspentOutputs.size());
+        for (UnspentOutput output : unspentOutputs) {
+            out.write(Utils.HEX.decode(output.getTxId()));
+            out.writeInt(output.getIndex());
+            out.writeUTF(output.getAddress() == null ? "" : output.getAddress());
+            byte[] script = Utils.HEX.decode(output.getScript());
+            out.writeShort(script.length);
+            out.write(script);
+            out.writeLong(output.getValue());
+        }
+    }
+
+    public static BitcoinPackedData readFrom(DataInput in) throws IOException {
+        int size = in.readInt();
+        List<UnspentOutput> unspentOutputs = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            byte[] txId = new byte[32];
+            in.readFully(txId);
+            int index = in.readInt();
+            String address = in.readUTF();
+            byte[] script = new byte[in.readUnsignedShort()];
+            in.readFully(script);
+            long value = in.readLong();
+            unspentOutputs.add(new UnspentOutput(Utils.HEX.encode(txId), index, address.isEmpty() ? null : address, Utils.HEX.encode(script), value));
+        }
+        return new BitcoinPackedData(unspentOutputs);
+    }
+
+    public static class Reader implements PackedData.Reader {
+        @Override
+        public byte getTag() {
+            return BITCOIN;
+        }
+
+        @Override
+        public BitcoinPackedData readFrom(DataInput in) throws IOException {
+            return BitcoinPackedData.readFrom(in);
+        }
+    }
+}
@@ -0,0 +1,582 @@
+package io.github.coinj.chains;
+
+import com.google.common.base.Preconditions;
+import io.github.coinj.AsyncChain;
+import io.github.coinj.PackedRawTransaction;
+import io.github.coinj.SendResult;
+import io.github.coinj.SignedRawTransaction;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Broadcasts signed transactions from an append-only log, so a crash neither loses one nor sends a payment twice.
+ * A transaction is flushed to the log before it is broadcast; records arriving while a flush runs are written
+ * together by the next one, a single fsync for the whole group. Broadcasts go out in batches through
+ * {@link AsyncChain#sendTransactionsAsync(List)}, at most {@link #getMaxInFlight()} at a time, and failed ones are
+ * retried with exponential backoff. A group whose write fails is cut off the log again, so the records after it are
+ * still read back; should that fail too, the queue takes no more transactions.
+ * <p>
+ * Transactions stay in the log until they are {@link #confirm(String) confirmed}. On open every one of them is
+ * broadcast again: one never acknowledged may or may not have gone out, one acknowledged may since have been dropped
+ * by the backend. Only the same signed transaction is ever sent again: the chains report a resend the backend
+ * already has, in its mempool or in a block, as sent, and before a transaction is given up the backend is asked
+ * whether it has it, so one broadcast just before a crash is never reported as failed.
+ */
+public class BroadcastQueue implements Closeable {
+    public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    public static final Duration DEFAULT_RETRY_BACKOFF = Duration.ofSeconds(1);
+
+    private static final int MAGIC = 0x434a4251;
+    private static final int VERSION = 1;
+    private static final int MAX_GROUP_SIZE = 1024;
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    // Record: length, type, transaction id, payload, crc32 of everything after the length
+    private static final byte SUBMITTED = 1;
+    private static final byte SENT = 2;
+    private static final byte CONFIRMED = 3;
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "coinj-broadcast");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Record CLOSE = new Record(null);
+
+    private final AsyncChain chain;
+    private final FileChannel channel;
+    private final BlockingQueue<Record> records = new LinkedBlockingQueue<>();
+    private final Thread writer;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final Deque<Entry> ready = new ArrayDeque<>();
+    private int inFlight;
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private long retryBackoffNanos = DEFAULT_RETRY_BACKOFF.toNanos();
+    private boolean closed;
+    // Set when a failed write could not be cut off the log; nothing is appended after it
+    private IOException failure;
+
+    /**
+     * Opens the log, compacting away confirmed transactions, and starts broadcasting the ones left in it.
+     */
+    public BroadcastQueue(Path file, AsyncChain chain) throws IOException {
+        this.chain = chain;
+        Map<String, Entry> recovered = read(file);
+        Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(out, ByteBuffer.allocate(8).putInt(0, MAGIC).putInt(4, VERSION));
+            for (Entry entry : recovered.values()) {
+                write(out, submitted(entry.transaction));
+                if (entry.sentTxId != null) {
+                    write(out, sent(entry.transaction.getTxId(), entry.sentTxId));
+                }
+            }
+            out.force(true);
+        }
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        for (Entry entry : recovered.values()) {
+            entry.active = true;
+            entries.put(entry.transaction.getTxId(), entry);
+            ready.add(entry);
+        }
+        this.writer = new Thread(this::writeLoop, "coinj-broadcast-log");
+        writer.setDaemon(true);
+        writer.start();
+        dispatch();
+    }
+
+    public synchronized int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public synchronized void setMaxInFlight(int maxInFlight) {
+        Preconditions.checkArgument(maxInFlight > 0, "Limit must be positive");
+        this.maxInFlight = maxInFlight;
+    }
+
+    public synchronized int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public synchronized void setMaxAttempts(int maxAttempts) {
+        Preconditions.checkArgument(maxAttempts > 0, "Attempts must be positive");
+        this.maxAttempts = maxAttempts;
+    }
+
+    public synchronized void setRetryBackoff(Duration retryBackoff) {
+        Preconditions.checkArgument(!retryBackoff.isNegative(), "Negative backoff");
+        this.retryBackoffNanos = retryBackoff.toNanos();
+    }
+
+    /**
+     * Logs the transaction and broadcasts it once the log is flushed. The future completes with the hash the backend
+     * answered, or fails when every attempt did and the backend does not have it; the transaction then stays in the
+     * log until {@link #rebroadcast()} or the next open. Submitting a transaction already in the log returns its result
+     * instead of sending it again.
+     */
+    public CompletableFuture<String> submit(SignedRawTransaction transaction) {
+        String txId = transaction.getTxId();
+        Entry entry;
+        synchronized (this) {
+            Preconditions.checkState(!closed, "Broadcast queue is closed");
+            Entry existing = entries.get(txId);
+            if (existing != null) {
+                if (!existing.active && existing.result.isCompletedExceptionally()) {
+                    existing.attempts = 0;
+                    retryLater(existing, 0);
+                }
+                return existing.result;
+            }
+            entry = new Entry(transaction);
+            entry.active = true;
+            entries.put(txId, entry);
+        }
+        CompletableFuture<String> result = entry.result;
+        append(submitted(transaction)).whenComplete((ignored, e) -> {
+            if (e != null) {
+                synchronized (this) {
+                    entries.remove(txId, entry);
+                }
+                result.completeExceptionally(e);
+                return;
+            }
+            synchronized (this) {
+                ready.add(entry);
+            }
+            // The writer dispatches once per group, so transactions flushed together are broadcast in one batch
+            if (Thread.currentThread() != writer) {
+                dispatch();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns the result of a transaction in the log, or null if it is not there.
+     */
+    public synchronized CompletableFuture<String> getResult(String txId) {
+        Entry entry = entries.get(txId);
+        return entry == null ? null : entry.result;
+    }
+
+    /**
+     * Returns the transactions in the log, acknowledged by the backend or not, in the order they were submitted.
+     */
+    public synchronized List<SignedRawTransaction> getUnconfirmed() {
+        List<SignedRawTransaction> transactions = new ArrayList<>(entries.size());
+        for (Entry entry : entries.values()) {
+            transactions.add(entry.transaction);
+        }
+        return transactions;
+    }
+
+    /**
+     * Removes the transaction from the log once it is deep enough in the chain that it will not be dropped.
+     */
+    public CompletableFuture<Void> confirm(String txId) {
+        synchronized (this) {
+            Preconditions.checkState(!closed, "Broadcast queue is closed");
+            if (entries.remove(txId) == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+        }
+        return append(record(CONFIRMED, txId, out -> {
+        }));
+    }
+
+    /**
+     * Broadcasts every transaction in the log again that is not being sent right now, for instance after the backend
+     * lost its mempool.
+     */
+    public void rebroadcast() {
+        synchronized (this) {
+            for (Entry entry : entries.values()) {
+                if (!entry.active) {
+                    entry.attempts = 0;
+                    retryLater(entry, 0);
+                }
+            }
+        }
+    }
+
+    private void dispatch() {
+        List<Entry> batch = new ArrayList<>();
+        synchronized (this) {
+            while (!closed && inFlight < maxInFlight && !ready.isEmpty()) {
+                Entry entry = ready.poll();
+                if (entries.get(entry.transaction.getTxId()) != entry) {
+                    // Confirmed while it waited
+                    entry.active = false;
+                    entry.result.complete(entry.sentTxId != null ? entry.sentTxId : entry.transaction.getTxId());
+                    continue;
+                }
+                entry.attempts++;
+                batch.add(entry);
+                inFlight++;
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<SignedRawTransaction> transactions = new ArrayList<>(batch.size());
+        for (Entry entry : batch) {
+            transactions.add(entry.transaction);
+        }
+        CompletableFuture<List<SendResult>> results;
+        try {
+            results = chain.sendTransactionsAsync(transactions);
+        } catch (RuntimeException e) {
+            results = new CompletableFuture<>();
+            results.completeExceptionally(e);
+        }
+        results.whenComplete((sent, e) -> {
+            synchronized (this) {
+                inFlight -= batch.size();
+            }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            for (int i = 0; i < batch.size(); i++) {
+                SendResult result = sent == null ? SendResult.failure(transactions.get(i), cause) : sent.get(i);
+                if (result.isSuccess()) {
+                    sent(batch.get(i), result.getTxId());
+                } else {
+                    failed(batch.get(i), result.getError());
+                }
+            }
+            dispatch();
+        });
+    }
+
+    private void sent(Entry entry, String txId) {
+        boolean first;
+        CompletableFuture<String> result;
+        synchronized (this) {
+            entry.active = false;
+            first = entry.sentTxId == null;
+            entry.sentTxId = txId;
+            result = entry.result;
+            if (first && !closed) {
+                // Losing this record to a crash costs one more broadcast, nothing waits for it
+                append(sent(entry.transaction.getTxId(), txId));
+            }
+        }
+        result.complete(txId);
+    }
+
+    private void failed(Entry entry, Throwable error) {
+        synchronized (this) {
+            if (entry.sentTxId != null) {
+                // Sent before, the backend most likely rejects it for being mined already
+                entry.active = false;
+                entry.result.complete(entry.sentTxId);
+                return;
+            }
+            if (entry.attempts < maxAttempts && !closed) {
+                retryLater(entry, retryBackoffNanos << Math.min(entry.attempts - 1, 10));
+                return;
+            }
+        }
+        // An earlier attempt may have gone through with its answer lost, to a crash or the network
+        String txId = entry.transaction.getTxId();
+        CompletableFuture<Boolean> known;
+        try {
+            known = chain.hasTransactionAsync(txId);
+        } catch (RuntimeException e) {
+            known = new CompletableFuture<>();
+            known.completeExceptionally(e);
+        }
+        known.whenComplete((found, e) -> {
+            if (Boolean.TRUE.equals(found)) {
+                sent(entry, txId);
+                return;
+            }
+            CompletableFuture<String> result;
+            synchronized (this) {
+                entry.active = false;
+                result = entry.result;
+            }
+            result.completeExceptionally(error);
+        });
+    }
+
+    // Called holding the lock
+    private void retryLater(Entry entry, long delayNanos) {
+        entry.active = true;
+        if (entry.result.isCompletedExceptionally()) {
+            entry.result = new CompletableFuture<>();
+        }
+        SCHEDULER.schedule(() -> {
+            synchronized (this) {
+                if (closed) {
+                    entry.active = false;
+                    entry.result.completeExceptionally(new IOException("Broadcast queue closed"));
+                    return;
+                }
+                ready.add(entry);
+            }
+            dispatch();
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private CompletableFuture<Void> append(ByteBuffer record) {
+        Record queued = new Record(record);
+        synchronized (this) {
+            if (closed) {
+                queued.written.completeExceptionally(new IOException("Broadcast queue closed"));
+                return queued.written;
+            }
+            if (failure != null) {
+                queued.written.completeExceptionally(new IOException("Broadcast log failed", failure));
+                return queued.written;
+            }
+            records.add(queued);
+        }
+        return queued.written;
+    }
+
+    // Group commit: everything queued while the previous group was flushed goes out with one fsync
+    private void writeLoop() {
+        List<Record> group = new ArrayList<>();
+        boolean closing = false;
+        while (!closing) {
+            try {
+                group.add(records.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            records.drainTo(group, MAX_GROUP_SIZE - 1);
+            closing = group.remove(CLOSE);
+            IOException error;
+            synchronized (this) {
+                error = failure;
+            }
+            if (error == null) {
+                long start = -1;
+                try {
+                    start = channel.size();
+                    for (Record record : group) {
+                        write(channel, record.bytes);
+                    }
+                    channel.force(false);
+                } catch (IOException e) {
+                    error = e;
+                    discard(start, e);
+                }
+            }
+            for (Record record : group) {
+                if (error == null) {
+                    record.written.complete(null);
+                } else {
+                    record.written.completeExceptionally(error);
+                }
+            }
+            group.clear();
+            dispatch();
+        }
+    }
+
+    // Records after a partly written one would be lost on the next open, which stops reading at the first bad one
+    private void discard(long start, IOException error) {
+        try {
+            if (start < 0) {
+                throw new IOException("Unknown log size");
+            }
+            channel.truncate(start);
+            channel.force(false);
+        } catch (IOException e) {
+            error.addSuppressed(e);
+            synchronized (this) {
+                failure = error;
+            }
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private interface Payload {
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+
+    private static ByteBuffer record(byte type, String txId, Payload payload) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0);
+            out.writeByte(type);
+            out.writeUTF(txId);
+            payload.writeTo(out);
+            out.writeInt(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] record = bytes.toByteArray();
+        int length = record.length - 8;
+        CRC32 crc = new CRC32();
+        crc.update(record, 4, length);
+        return ByteBuffer.wrap(record).putInt(0, length).putInt(4 + length, (int) crc.getValue());
+    }
+
+    private static ByteBuffer submitted(SignedRawTransaction transaction) {
+        return record(SUBMITTED, transaction.getTxId(), out -> {
+            ByteBuffer rawTx = transaction.getRawTx();
+            byte[] bytes = new byte[rawTx.remaining()];
+            rawTx.get(bytes);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            transaction.writeTo(out);
+        });
+    }
+
+    private static ByteBuffer sent(String txId, String sentTxId) {
+        return record(SENT, txId, out -> out.writeUTF(sentTxId));
+    }
+
+    private static Map<String, Entry> read(Path file) throws IOException {
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        if (!Files.exists(file) || Files.size(file) == 0) {
+            return entries;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a broadcast log: " + file);
+            }
+            CRC32 crc = new CRC32();
+            while (true) {
+                byte[] body;
+                try {
+                    int length = in.readInt();
+                    if (length <= 0 || length > MAX_RECORD_SIZE) {
+                        break;
+                    }
+                    body = new byte[length];
+                    in.readFully(body);
+                    int checksum = in.readInt();
+                    crc.reset();
+                    crc.update(body, 0, length);
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                // A record torn by a crash ends the log; no record after it was ever acknowledged
+                apply(entries, body);
+            }
+        }
+        return entries;
+    }
+
+    private static void apply(Map<String, Entry> entries, byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        byte type = in.readByte();
+        String txId = in.readUTF();
+        switch (type) {
+            case SUBMITTED:
+                byte[] rawTx = new byte[in.readInt()];
+                in.readFully(rawTx);
+                entries.put(txId, new Entry(new SignedRawTransaction(PackedRawTransaction.readFrom(in), rawTx, txId)));
+                break;
+            case SENT:
+                Entry entry = entries.get(txId);
+                if (entry != null) {
+                    entry.sentTxId = in.readUTF();
+                }
+                break;
+            case CONFIRMED:
+                entries.remove(txId);
+                break;
+            default:
+                throw new IOException("Unknown broadcast log record " + type);
+        }
+    }
+
+    /**
+     * Stops broadcasting and closes the log once the records queued so far are written. Transactions not confirmed
+     * stay in the log for the next open.
+     */
+    @Override
+    public void close() throws IOException {
+        Collection<Entry> waiting;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            records.add(CLOSE);
+            waiting = new ArrayList<>(ready);
+            ready.clear();
+        }
+        for (Entry entry : waiting) {
+            entry.result.completeExceptionally(new IOException("Broadcast queue closed"));
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static class Entry {
+        private final SignedRawTransaction transaction;
+        private CompletableFuture<String> result = new CompletableFuture<>();
+        private String sentTxId;
+        private int attempts;
+        // Waiting to be sent, being sent or waiting for a retry
+        private boolean active;
+
+        Entry(SignedRawTransaction transaction) {
+            this.transaction = transaction;
+        }
+    }
+
+    private static class Record {
+        private final ByteBuffer bytes;
+        private final CompletableFuture<Void> written = new CompletableFuture<>();
+
+        Record(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+    }
+}
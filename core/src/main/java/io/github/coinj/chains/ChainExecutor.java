@@ -0,0 +1,170 @@
+package io.github.coinj.chains;
+
+import com.google.common.base.Preconditions;
+import io.github.coinj.Chain;
+import io.github.coinj.PackedRawTransaction;
+import io.github.coinj.RawTransaction;
+import io.github.coinj.SignedRawTransaction;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs the blocking operations of {@link Chain} on virtual threads where the JVM has them (Java 21 and later),
+ * otherwise on a fixed pool of {@link #DEFAULT_PLATFORM_THREADS} daemon threads. A task waiting on the backend
+ * then costs a few hundred bytes instead of a thread stack, so tens of thousands of payments can be in flight.
+ * <p>
+ * The calls of each chain are limited by a semaphore of their own, {@link #DEFAULT_MAX_CONCURRENT_CALLS} permits
+ * unless set, so one slow backend is never flooded and cannot hold up the others. Signing needs no backend and
+ * takes no permit.
+ * <p>
+ * Ethereum payments from one address may run concurrently, their nonces come from the chain's {@link NonceManager}.
+ * Bitcoin payments from one address would pick the same unspent outputs, so run them one at a time on a chain with
+ * a {@link UtxoCache}, or pay many recipients in one transaction.
+ */
+public class ChainExecutor implements Closeable {
+    public static final int DEFAULT_MAX_CONCURRENT_CALLS = 64;
+    public static final int DEFAULT_PLATFORM_THREADS = 64;
+
+    private final ExecutorService executor;
+    private final boolean virtual;
+    private final ConcurrentMap<Chain, Semaphore> permits = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Chain, Integer> limits = new ConcurrentHashMap<>();
+
+    public ChainExecutor() {
+        ExecutorService virtualExecutor = newVirtualThreadExecutor();
+        this.virtual = virtualExecutor != null;
+        this.executor = virtual ? virtualExecutor : Executors.newFixedThreadPool(DEFAULT_PLATFORM_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "coinj-chain");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs the operations on the given executor, which is shut down on close.
+     */
+    public ChainExecutor(ExecutorService executor) {
+        this.executor = Preconditions.checkNotNull(executor);
+        this.virtual = false;
+    }
+
+    // Looked up reflectively so the library keeps running on Java 8
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    public int getMaxConcurrentCalls(Chain chain) {
+        return limits.getOrDefault(chain, DEFAULT_MAX_CONCURRENT_CALLS);
+    }
+
+    /**
+     * Limits the operations on the chain running at once. Operations already running keep their permits.
+     */
+    public void setMaxConcurrentCalls(Chain chain, int maxConcurrentCalls) {
+        Preconditions.checkArgument(maxConcurrentCalls > 0, "Limit must be positive");
+        limits.put(chain, maxConcurrentCalls);
+        permits.put(chain, new Semaphore(maxConcurrentCalls));
+    }
+
+    public CompletableFuture<PackedRawTransaction> pack(Chain chain, RawTransaction rawTransaction) {
+        return submit(() -> limited(chain, () -> chain.packTransaction(rawTransaction)));
+    }
+
+    public CompletableFuture<SignedRawTransaction> sign(Chain chain, PackedRawTransaction transaction, List<String> keys) {
+        return submit(() -> chain.signTransaction(transaction, keys));
+    }
+
+    public CompletableFuture<String> send(Chain chain, SignedRawTransaction transaction) {
+        return submit(() -> limited(chain, () -> chain.sendTransaction(transaction)));
+    }
+
+    /**
+     * Packs, signs and sends the transaction in one task and returns its hash.
+     */
+    public CompletableFuture<String> pay(Chain chain, RawTransaction rawTransaction, List<String> keys) {
+        return submit(() -> {
+            PackedRawTransaction packed = limited(chain, () -> chain.packTransaction(rawTransaction));
+            SignedRawTransaction signed = chain.signTransaction(packed, keys);
+            return limited(chain, () -> chain.sendTransaction(signed));
+        });
+    }
+
+    /**
+     * Packs every transaction concurrently; each future fails on its own, in the order given.
+     */
+    public List<CompletableFuture<PackedRawTransaction>> packAll(Chain chain, List<RawTransaction> rawTransactions) {
+        List<CompletableFuture<PackedRawTransaction>> packed = new ArrayList<>(rawTransactions.size());
+        for (RawTransaction rawTransaction : rawTransactions) {
+            packed.add(pack(chain, rawTransaction));
+        }
+        return packed;
+    }
+
+    /**
+     * Pays every transaction concurrently with the same keys; each future fails on its own, in the order given.
+     */
+    public List<CompletableFuture<String>> payAll(Chain chain, List<RawTransaction> rawTransactions, List<String> keys) {
+        List<CompletableFuture<String>> txIds = new ArrayList<>(rawTransactions.size());
+        for (RawTransaction rawTransaction : rawTransactions) {
+            txIds.add(pay(chain, rawTransaction, keys));
+        }
+        return txIds;
+    }
+
+    private Semaphore permits(Chain chain) {
+        return permits.computeIfAbsent(chain, ignored -> new Semaphore(getMaxConcurrentCalls(chain)));
+    }
+
+    private <T> T limited(Chain chain, Callable<T> call) throws Exception {
+        Semaphore semaphore = permits(chain);
+        semaphore.acquire();
+        try {
+            return call.call();
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(Callable<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                future.complete(call.call());
+            } catch (ExecutionException e) {
+                future.completeExceptionally(e.getCause() != null ? e.getCause() : e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.completeExceptionally(e);
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Stops taking operations; those already submitted still run.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -2,143 +2,547 @@ package io.github.coinj.chains;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import io.github.coinj.*;
 import io.github.coinj.RawTransaction;
 import io.github.coinj.SignedRawTransaction;
 import org.bitcoinj.core.ECKey;
+import org.bitcoinj.crypto.DeterministicKey;
+import org.bitcoinj.params.MainNetParams;
 import org.bouncycastle.pqc.math.linearalgebra.ByteUtils;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 import org.web3j.crypto.*;
 import org.web3j.protocol.Web3j;
 import org.web3j.protocol.core.DefaultBlockParameterName;
-import org.web3j.protocol.core.methods.response.EthEstimateGas;
-import org.web3j.protocol.http.HttpService;
 import org.web3j.tx.ChainIdLong;
 import org.web3j.utils.Numeric;
 
-import java.math.BigDecimal;
+import java.io.IOException;
 import java.math.BigInteger;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
 
-public class EthereumChain implements Chain {
+public class EthereumChain extends AbstractChain {
 
-    public static final List<io.github.coinj.Coin> COINS = ImmutableList.of(Coin.ETH, Coin.USDT);
+    public static final List<io.github.coinj.Coin> COINS = ImmutableList.of(Coin.ETH, Coin.USDT, Coin.ERC20);
 
     private final static String DEFAULT_URL = "https://api.infura.io/v1/jsonrpc/mainnet";
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+    // Disperse (https://disperse.app), deployed at the same address on mainnet and the public testnets
+    public static final String DISPERSE_CONTRACT = "0xD152f549545093347A162Dce210e7293f1452150";
+    public static final String USDT_CONTRACT = "0xdAC17F958D2ee523a2206206994597C13D831ec7";
+    private static final int ETHEREUM_COIN_TYPE = 60;
+    private static final BigInteger MAX_GAS_PER_OUTPUT = BigInteger.valueOf(100000L);
+    // Validation errors of geth and its forks
+    private static final String[] REJECTIONS = {
+            "insufficient funds", "intrinsic gas too low", "exceeds block gas limit", "invalid sender",
+            "oversized data", "negative value", "exceeds the configured cap", "replay-protected", "invalid chain id"
+    };
 
     private long chainId;
-    private final String url;
+    // Web3j calls go through the transport of the chain, web3j only builds and parses the JSON-RPC messages
+    private final Web3j web3j;
+    private NonceManager nonceManager = new NonceManager(this::fetchNonce);
+    // eth_gasPrice has no confirmation target, every target gets the same price
+    private FeeOracle<BigInteger> gasPriceOracle = new RefreshingFeeOracle<>(target -> fetchGasPrice());
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private String disperseContract = DISPERSE_CONTRACT;
+    private final Map<Coin, String> tokenContracts = new EnumMap<>(Coin.class);
+    private TokenRegistry tokenRegistry = new TokenRegistry(this::fetchToken);
+    // Call data is encoded into a buffer per thread that is reused from transaction to transaction
+    private final ThreadLocal<AbiEncoder> encoders = ThreadLocal.withInitial(AbiEncoder::new);
 
     public EthereumChain(Network network, String url) {
+        this(network, HttpTransport.of(url));
+    }
+
+    // A factory rather than an overload, so a null url keeps resolving to the constructor above
+    private EthereumChain(Network network, HttpTransport transport) {
+        super(transport);
         switch (network) {
             case MAIN:
                 chainId = ChainIdLong.MAINNET;
+                break;
             case TEST:
                 chainId = ChainIdLong.KOVAN;
+                break;
         }
-        this.url = url;
+        if (network == Network.MAIN) {
+            tokenContracts.put(Coin.USDT, USDT_CONTRACT);
+            tokenRegistry.register(new TokenRegistry.Token(USDT_CONTRACT, "USDT", Coin.USDT.getDecimals()));
+        }
+        this.web3j = Web3j.build(new TransportService(transport));
     }
 
-    private int getDecimals(Coin coin) {
-        Preconditions.checkArgument(COINS.contains(coin));
-        switch (coin) {
-            case USDT:
-                return 6;
-            default:
-                return 18;
-        }
+    public static EthereumChain of(Network network, HttpTransport transport) {
+        return new EthereumChain(network, Preconditions.checkNotNull(transport));
+    }
+
+    public NonceManager getNonceManager() {
+        return nonceManager;
+    }
+
+    public void setNonceManager(NonceManager nonceManager) {
+        this.nonceManager = Preconditions.checkNotNull(nonceManager);
+    }
+
+    public FeeOracle<BigInteger> getGasPriceOracle() {
+        return gasPriceOracle;
+    }
+
+    public void setGasPriceOracle(FeeOracle<BigInteger> gasPriceOracle) {
+        this.gasPriceOracle = Preconditions.checkNotNull(gasPriceOracle);
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Most providers cap the number of calls in one JSON-RPC batch, larger batches are split and sent concurrently.
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        Preconditions.checkArgument(maxBatchSize > 0);
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public String getDisperseContract() {
+        return disperseContract;
+    }
+
+    /**
+     * Contract paying transactions with several outputs, it must expose {@code disperseEther(address[],uint256[])}
+     * and {@code disperseToken(address,address[],uint256[])}. Token payouts pull the total with
+     * {@code transferFrom}, so the sender has to approve the contract first.
+     */
+    public void setDisperseContract(String disperseContract) {
+        this.disperseContract = disperseContract;
+    }
+
+    public String getTokenContract(Coin coin) {
+        return tokenContracts.get(coin);
+    }
+
+    public void setTokenContract(Coin coin, String contract) {
+        tokenContracts.put(coin, contract);
+    }
+
+    public TokenRegistry getTokenRegistry() {
+        return tokenRegistry;
+    }
+
+    public void setTokenRegistry(TokenRegistry tokenRegistry) {
+        this.tokenRegistry = Preconditions.checkNotNull(tokenRegistry);
+    }
+
+    private CompletableFuture<byte[]> call(String contract, int selector) {
+        String data = Numeric.toHexString(encoders.get().reset().selector(selector).toByteArray());
+        org.web3j.protocol.core.methods.request.Transaction callTx =
+                org.web3j.protocol.core.methods.request.Transaction.createEthCallTransaction(null, contract, data);
+        return web3j.ethCall(callTx, DefaultBlockParameterName.LATEST).sendAsync().thenApply(result -> {
+            if (result.hasError()) {
+                throw new RuntimeException("eth_call: " + result.getError().getMessage());
+            }
+            return Numeric.hexStringToByteArray(result.getValue());
+        });
+    }
+
+    private CompletableFuture<TokenRegistry.Token> fetchToken(String contract) {
+        return timed(MetricsListener.Stage.FETCH_TOKEN, () -> {
+            CompletableFuture<byte[]> decimals = call(contract, AbiEncoder.DECIMALS);
+            CompletableFuture<byte[]> symbol = call(contract, AbiEncoder.SYMBOL);
+            return decimals.thenCombine(symbol, (decimalsResult, symbolResult) -> {
+                Preconditions.checkState(decimalsResult.length == AbiEncoder.WORD, "Not an ERC20 contract: " + contract);
+                return new TokenRegistry.Token(contract, TokenRegistry.decodeSymbol(symbolResult), TokenRegistry.readInt(decimalsResult, 0));
+            });
+        });
+    }
+
+    private CompletableFuture<BigInteger> fetchGasPrice() {
+        return timed(MetricsListener.Stage.FETCH_GAS_PRICE, () -> web3j.ethGasPrice().sendAsync().thenApply(gasPrice -> {
+            if (gasPrice.hasError()) {
+                throw new RuntimeException("eth_gasPrice: " + gasPrice.getError().getMessage());
+            }
+            return gasPrice.getGasPrice();
+        }));
+    }
+
+    private CompletableFuture<BigInteger> fetchNonce(String address) {
+        return timed(MetricsListener.Stage.FETCH_NONCE, () -> web3j.ethGetTransactionCount(address, DefaultBlockParameterName.PENDING).sendAsync().thenApply(count -> {
+            if (count.hasError()) {
+                throw new RuntimeException("eth_getTransactionCount: " + count.getError().getMessage());
+            }
+            return count.getTransactionCount();
+        }));
+    }
+
+    private CompletableFuture<BigInteger> estimateGas(String from, Call call) {
+        org.web3j.protocol.core.methods.request.Transaction estimateTx = new org.web3j.protocol.core.methods.request.Transaction(
+                from, null, null, null, call.to, call.value, call.data.length == 0 ? null : Numeric.toHexString(call.data));
+        return timed(MetricsListener.Stage.ESTIMATE_GAS, () -> web3j.ethEstimateGas(estimateTx).sendAsync().thenApply(estimateGas -> {
+            if (estimateGas.hasError()) {
+                throw new RuntimeException("eth_estimateGas: " + estimateGas.getError().getMessage());
+            }
+            return estimateGas.getAmountUsed();
+        }));
     }
 
     @Override
     public KeyPair generateKeyPair(String secret) {
         ECKey ecKey = ECKey.fromPrivate(ByteUtils.fromHexString(secret));
-        String address = Numeric.prependHexPrefix(Keys.getAddress(Sign.publicKeyFromPrivate(ecKey.getPrivKey())));
-        return new KeyPair(ecKey.getPrivateKeyAsHex(), address);
+        return new KeyPair(ecKey.getPrivateKeyAsHex(), toAddress(ecKey));
     }
 
     @Override
     public KeyPair generateKeyPair() {
-        return generateKeyPair(new ECKey().getPrivateKeyAsHex());
+        ECKey ecKey = new ECKey();
+        return new KeyPair(ecKey.getPrivateKeyAsHex(), toAddress(ecKey));
+    }
+
+    // Keccak of the uncompressed public key without its 0x04 prefix, read off the key's point rather than
+    // multiplied out again from the private key
+    public static String toAddress(ECKey ecKey) {
+        byte[] publicKey = ecKey.getPubKeyPoint().getEncoded(false);
+        byte[] hash = Hash.sha3(publicKey, 1, publicKey.length - 1);
+        return Numeric.toHexString(hash, hash.length - 20, 20, true);
+    }
+
+    /**
+     * Returns account m/44'/60'/account' of the seed.
+     */
+    public HdAccount createHdAccount(byte[] seed, int account) {
+        return createHdAccount(HdAccount.accountKey(seed, 44, ETHEREUM_COIN_TYPE, account));
+    }
+
+    /**
+     * Returns the account of a serialized extended key; a public one gives a watching account.
+     */
+    public HdAccount createHdAccount(String extendedKey) {
+        return createHdAccount(DeterministicKey.deserializeB58(extendedKey, MainNetParams.get()));
+    }
+
+    public HdAccount createHdAccount(DeterministicKey accountKey) {
+        return new HdAccount(accountKey, EthereumChain::toAddress);
+    }
+
+    private static class Call {
+        private final String to;
+        private final BigInteger value;
+        private final byte[] data;
+
+        Call(String to, BigInteger value, byte[] data) {
+            this.to = to;
+            this.value = value;
+            this.data = data;
+        }
+    }
+
+    private String tokenContract(RawTransaction rawTransaction) {
+        String contract = rawTransaction.getCoin() == Coin.ERC20 ? rawTransaction.getContract() : tokenContracts.get(rawTransaction.getCoin());
+        Preconditions.checkState(contract != null, "No contract for " + rawTransaction.getCoin() + " on Ethereum Chain");
+        return contract;
+    }
+
+    /**
+     * A single output is a plain transfer, several outputs are paid by one call to the disperse contract.
+     */
+    private Call toCall(RawTransaction rawTransaction, String contract, int decimals) {
+        List<RawTransaction.Output> outputs = rawTransaction.getOutputs();
+        Preconditions.checkArgument(!outputs.isEmpty(), "No outputs");
+        AbiEncoder encoder = encoders.get().reset();
+        if (outputs.size() == 1) {
+            RawTransaction.Output output = outputs.get(0);
+            BigInteger amount = output.getAmount().toBigInteger(decimals);
+            if (contract == null) {
+                return new Call(output.getAddress(), amount, new byte[0]);
+            }
+            encoder.selector(AbiEncoder.TRANSFER).address(output.getAddress()).uint256(amount);
+            return new Call(contract, BigInteger.ZERO, encoder.toByteArray());
+        }
+
+        Preconditions.checkState(disperseContract != null, "No disperse contract for Ethereum Chain");
+        int count = outputs.size();
+        int headWords = contract == null ? 2 : 3;
+        encoder.reserve(4 + headWords * AbiEncoder.WORD + 2 * AbiEncoder.arraySize(count));
+        // Head words hold the static arguments and the offsets of the two arrays, which follow in order
+        if (contract == null) {
+            encoder.selector(AbiEncoder.DISPERSE_ETHER);
+        } else {
+            encoder.selector(AbiEncoder.DISPERSE_TOKEN).address(contract);
+        }
+        encoder.uint256(headWords * AbiEncoder.WORD)
+                .uint256(headWords * AbiEncoder.WORD + AbiEncoder.arraySize(count));
+        encoder.uint256(count);
+        for (RawTransaction.Output output : outputs) {
+            encoder.address(output.getAddress());
+        }
+        encoder.uint256(count);
+        Amount total = Amount.ofUnits(0, decimals);
+        for (RawTransaction.Output output : outputs) {
+            Amount amount = output.getAmount().withDecimals(decimals);
+            encoder.uint256(amount);
+            total = total.add(amount);
+        }
+        return new Call(disperseContract, contract == null ? total.toBigInteger() : BigInteger.ZERO, encoder.toByteArray());
     }
 
     @Override
     public PackedRawTransaction packTransaction(RawTransaction rawTransaction) throws ExecutionException, InterruptedException {
+        return packTransactionAsync(rawTransaction).get();
+    }
+
+    @Override
+    public CompletableFuture<PackedRawTransaction> packTransactionAsync(RawTransaction rawTransaction) {
+        Preconditions.checkArgument(COINS.contains(rawTransaction.getCoin()), "Unsupported " + rawTransaction.getCoin() + " for Ethereum Chain");
+        return timed(MetricsListener.Stage.PACK, () -> pack(rawTransaction));
+    }
+
+    private CompletableFuture<PackedRawTransaction> pack(RawTransaction rawTransaction) {
         PackedRawTransaction packedTx = new PackedRawTransaction(rawTransaction);
-        Web3j web3 = Web3j.build(new HttpService(url));
-        BigInteger gasPrice = web3.ethGasPrice().sendAsync().get().getGasPrice();
         RawTransaction.Input from = rawTransaction.getInputs().get(0);
-        BigInteger nonce = web3.ethGetTransactionCount(from.getAddress(), DefaultBlockParameterName.LATEST).sendAsync().get().getTransactionCount();
-        BigInteger gasLimit = null;
-        RawTransaction.Output output = packedTx.getOutputs().get(0);
-        BigInteger value = null;
-        BigInteger transferValue = output.getAmount().movePointRight(this.getDecimals(rawTransaction.getCoin())).toBigInteger();
-        String data = "";
+        BigInteger maxGasLimit = MAX_GAS_PER_OUTPUT.multiply(BigInteger.valueOf(rawTransaction.getOutputs().size()));
+        CompletableFuture<Call> callFuture;
         if (rawTransaction.getCoin() == Coin.ETH) {
-            value = transferValue;
-            EthEstimateGas estimateGas = web3.ethEstimateGas(new org.web3j.protocol.core.methods.request.Transaction(from.getAddress(), nonce, null, null, output.getAddress(), value, null)).sendAsync().get();
-            gasLimit = estimateGas.getAmountUsed();
+            callFuture = CompletableFuture.completedFuture(toCall(rawTransaction, null, Coin.ETH.getDecimals()));
         } else {
-            value = BigInteger.ZERO;
-            String amountHex = ByteUtils.toHexString(transferValue.toByteArray());
-            String amountPrefix = "00000000000000000000000000000000000000000000000000000000";
-            data = "0xa9059cbb000000000000000000000000" + output.getAddress().substring(2) + amountPrefix.substring(amountPrefix.length() - amountHex.length()) + amountHex;
-            EthEstimateGas estimateGas = web3.ethEstimateGas(new org.web3j.protocol.core.methods.request.Transaction(from.getAddress(), nonce, null, null, output.getAddress(), value, data)).sendAsync().get();
-            gasLimit = estimateGas.getAmountUsed();
+            String contract = tokenContract(rawTransaction);
+            callFuture = tokenRegistry.get(contract).thenApply(token -> toCall(rawTransaction, contract, token.getDecimals()));
         }
 
-        Preconditions.checkArgument(gasLimit.compareTo(BigInteger.valueOf(100000L)) > 0, "Too much gas limit");
+        // The gas price, the nonce and the token are normally served from memory, leaving the estimate as the only round trip
+        CompletableFuture<BigInteger> gasPriceFuture = gasPriceOracle.getFee(1);
+        CompletableFuture<BigInteger> nonceFuture = nonceManager.reserve(from.getAddress());
+        CompletableFuture<BigInteger> gasLimitFuture = callFuture.thenCompose(call -> estimateGas(from.getAddress(), call));
+        CompletableFuture<PackedRawTransaction> packed = CompletableFuture.allOf(gasPriceFuture, nonceFuture, gasLimitFuture).thenApply(ignored -> {
+            BigInteger gasPrice = gasPriceFuture.join();
+            BigInteger nonce = nonceFuture.join();
+            BigInteger gasLimit = gasLimitFuture.join();
+            Preconditions.checkArgument(gasLimit.compareTo(maxGasLimit) <= 0, "Too much gas limit");
+
+            if (packedTx.getFee() == null) {
+                packedTx.setFee(Amount.ofUnits(gasPrice.multiply(gasLimit), Coin.ETH.getDecimals()));
+            }
+            Call call = callFuture.join();
+            packedTx.setData(new EthereumPackedData(nonce, gasPrice, gasLimit, call.to, call.value, call.data));
+            return packedTx;
+        });
+        packed.whenComplete((result, e) -> {
+            if (e != null) {
+                nonceFuture.thenAccept(nonce -> nonceManager.release(from.getAddress(), nonce));
+            }
+        });
+        return packed;
+    }
 
-        if (packedTx.getFee() == null) {
-            BigInteger fee = gasPrice.multiply(gasLimit);
-            packedTx.setFee(new BigDecimal(fee).movePointLeft(18));
+    /**
+     * Gives back the nonce of a packed transaction that will not be sent.
+     */
+    public void releaseNonce(PackedRawTransaction transaction) {
+        if (transaction.getData() instanceof EthereumPackedData) {
+            BigInteger nonce = ((EthereumPackedData) transaction.getData()).getNonce();
+            nonceManager.release(transaction.getInputs().get(0).getAddress(), nonce);
         }
-        packedTx.setExtra("gasPrice", gasPrice);
-        packedTx.setExtra("gasLimit", gasLimit);
-        packedTx.setExtra("nonce", nonce);
-        packedTx.setExtra("data", data);
-        return packedTx;
     }
 
     @Override
     public SignedRawTransaction signTransaction(PackedRawTransaction transaction, List<String> keys) {
-        BigInteger nonce = (BigInteger) transaction.getExtra("nonce");
-        BigInteger gasPrice = (BigInteger) transaction.getExtra("gasPrice");
-        BigInteger gasLimit = (BigInteger) transaction.getExtra("gasLimit");
-        BigInteger value = (BigInteger) transaction.getExtra("value");
-        String data = (String) transaction.getExtra("data");
+        return timedSync(MetricsListener.Stage.SIGN, () -> sign(transaction, keys));
+    }
 
-        RawTransaction.Output to = transaction.getOutputs().get(0);
+    private SignedRawTransaction sign(PackedRawTransaction transaction, List<String> keys) {
+        MetricsListener metrics = this.metrics;
+        EthereumPackedData packed = transaction.getData(EthereumPackedData.class);
         org.web3j.crypto.RawTransaction rawTransaction = org.web3j.crypto.RawTransaction.createTransaction(
-                nonce, gasPrice, gasLimit, to.getAddress(), value, data);
+                packed.getNonce(), packed.getGasPrice(), packed.getGasLimit(), packed.getTo(), packed.getValue(), Numeric.toHexString(packed.getData()));
 
-        // sign & send our transaction
+        long start = System.nanoTime();
         byte[] signedMessage = TransactionEncoder.signMessage(rawTransaction, chainId, Credentials.create(keys.get(0)));
-        String hexValue = Numeric.toHexString(signedMessage);
-        /*
-            {
-              "jsonrpc": "2.0",
-              "id": 10,
-              "method": "eth_sendRawTransaction",
-              "params": [
-                "<hex>"
-              ]
-            }
-         */
-        JSONObject rawTx = new JSONObject();
-        rawTx.put("jsonrpc", "2.0");
-        rawTx.put("id", 1);
-        rawTx.put("method", "eth_sendRawTransaction");
-        JSONArray rawTxParams = new JSONArray();
-        rawTxParams.put(hexValue);
-        rawTx.put("params", rawTxParams);
-        rawTx.put("rawTx", rawTx);
-        return new SignedRawTransaction(transaction, rawTx);
+        metrics.onInputSigned(System.nanoTime() - start);
+        metrics.onTransactionSigned(signedMessage.length, 1, transaction.getOutputs().size());
+        return new SignedRawTransaction(transaction, signedMessage, Numeric.toHexString(Hash.sha3(signedMessage)));
     }
 
     @Override
-    public String sendTransaction(SignedRawTransaction transaction) {
-        return null;
+    public CompletableFuture<SignedRawTransaction> signTransactionAsync(PackedRawTransaction transaction, List<String> keys) {
+        return CompletableFuture.supplyAsync(() -> signTransaction(transaction, keys));
+    }
+
+    private static void appendSendRequest(HexRequestBody.Builder body, int id, SignedRawTransaction transaction) {
+        // {"jsonrpc":"2.0","id":1,"method":"eth_sendRawTransaction","params":["0x..."]}
+        body.text("{\"jsonrpc\":\"2.0\",\"id\":" + id + ",\"method\":\"eth_sendRawTransaction\",\"params\":[\"0x")
+                .hex(transaction.getRawTx())
+                .text("\"]}");
+    }
+
+    private CompletableFuture<String> rpc(HexRequestBody.Builder body) {
+        return timed(MetricsListener.Stage.BROADCAST, () -> post("", body.build(JSON)));
+    }
+
+    private SendResult toSendResult(SignedRawTransaction transaction, JSONObject reply) {
+        if (reply.isNull("error")) {
+            return SendResult.success(transaction, reply.getString("result"));
+        }
+        String message = reply.getJSONObject("error").optString("message");
+        String error = message.toLowerCase();
+        if (error.contains("already known") || error.contains("known transaction")) {
+            return SendResult.success(transaction, transaction.getTxId());
+        }
+        if (isRejected(error)) {
+            releaseNonce(transaction);
+        } else {
+            // The transaction may sit in some mempool or the node disagrees with the local nonces, so the
+            // reservation is kept until the node's pending count settles it
+            nonceManager.resync(transaction.getInputs().get(0).getAddress());
+        }
+        return SendResult.failure(transaction, new RuntimeException("eth_sendRawTransaction: " + message));
+    }
+
+    /**
+     * Whether the node refused the transaction for what it is, so no mempool can hold it and its nonce is free again.
+     * Pricing errors are left out: an underpriced replacement means another transaction holds the nonce.
+     */
+    private static boolean isRejected(String error) {
+        for (String rejection : REJECTIONS) {
+            if (error.contains(rejection)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void resyncNonces(List<SignedRawTransaction> transactions) {
+        // Whether the node accepted the transactions is unknown, only its pending count can tell
+        for (SignedRawTransaction transaction : transactions) {
+            nonceManager.resync(transaction.getInputs().get(0).getAddress());
+        }
+    }
+
+    @Override
+    public String sendTransaction(SignedRawTransaction transaction) throws IOException {
+        return await(sendTransactionAsync(transaction));
+    }
+
+    @Override
+    public CompletableFuture<String> sendTransactionAsync(SignedRawTransaction transaction) {
+        HexRequestBody.Builder body = new HexRequestBody.Builder();
+        appendSendRequest(body, 1, transaction);
+        CompletableFuture<String> response = rpc(body);
+        response.exceptionally(e -> {
+            resyncNonces(ImmutableList.of(transaction));
+            return null;
+        });
+        return response.thenCompose(reply -> checkMined(toSendResult(transaction, new JSONObject(reply))))
+                .thenApply(result -> {
+                    if (!result.isSuccess()) {
+                        throw (RuntimeException) result.getError();
+                    }
+                    return result.getTxId();
+                });
+    }
+
+    /**
+     * Sends the transactions as JSON-RPC batches of at most {@link #getMaxBatchSize()} calls.
+     */
+    @Override
+    public CompletableFuture<List<SendResult>> sendTransactionsAsync(List<SignedRawTransaction> transactions) {
+        List<CompletableFuture<List<SendResult>>> batches = new ArrayList<>();
+        for (List<SignedRawTransaction> batch : Lists.partition(transactions, maxBatchSize)) {
+            batches.add(sendBatch(batch));
+        }
+        return CompletableFuture.allOf(batches.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            List<SendResult> results = new ArrayList<>(transactions.size());
+            for (CompletableFuture<List<SendResult>> batch : batches) {
+                results.addAll(batch.join());
+            }
+            return results;
+        });
+    }
+
+    private CompletableFuture<List<SendResult>> sendBatch(List<SignedRawTransaction> batch) {
+        HexRequestBody.Builder body = new HexRequestBody.Builder().text("[");
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) {
+                body.text(",");
+            }
+            appendSendRequest(body, i, batch.get(i));
+        }
+        body.text("]");
+        return rpc(body).handle((response, e) -> {
+            List<SendResult> results = new ArrayList<>(batch.size());
+            if (e != null) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                resyncNonces(batch);
+                for (SignedRawTransaction transaction : batch) {
+                    results.add(SendResult.failure(transaction, cause));
+                }
+                return results;
+            }
+            Object replies = new JSONTokener(response).nextValue();
+            if (!(replies instanceof JSONArray)) {
+                // The whole batch was rejected with a single error
+                JSONObject reply = (JSONObject) replies;
+                for (SignedRawTransaction transaction : batch) {
+                    results.add(toSendResult(transaction, reply));
+                }
+                return results;
+            }
+            // Replies may come back in any order
+            Map<Integer, JSONObject> byId = new HashMap<>();
+            for (Object reply : (JSONArray) replies) {
+                byId.put(((JSONObject) reply).getInt("id"), (JSONObject) reply);
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                JSONObject reply = byId.get(i);
+                if (reply == null) {
+                    resyncNonces(batch.subList(i, i + 1));
+                    results.add(SendResult.failure(batch.get(i), new RuntimeException("eth_sendRawTransaction: no reply")));
+                } else {
+                    results.add(toSendResult(batch.get(i), reply));
+                }
+            }
+            return results;
+        }).thenCompose(this::checkMined);
+    }
+
+    /**
+     * A node answers nonce too low both for a transaction it already mined and for one conflicting with it; only
+     * looking the hash up tells them apart.
+     */
+    private CompletableFuture<SendResult> checkMined(SendResult result) {
+        if (result.isSuccess()
+                || !String.valueOf(result.getError().getMessage()).toLowerCase().contains("nonce too low")) {
+            return CompletableFuture.completedFuture(result);
+        }
+        SignedRawTransaction transaction = result.getTransaction();
+        return hasTransactionAsync(transaction.getTxId()).handle((known, e) ->
+                Boolean.TRUE.equals(known) ? SendResult.success(transaction, transaction.getTxId()) : result);
+    }
+
+    private CompletableFuture<List<SendResult>> checkMined(List<SendResult> results) {
+        List<CompletableFuture<SendResult>> checked = new ArrayList<>(results.size());
+        for (SendResult result : results) {
+            checked.add(checkMined(result));
+        }
+        return CompletableFuture.allOf(checked.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            List<SendResult> mined = new ArrayList<>(checked.size());
+            for (CompletableFuture<SendResult> result : checked) {
+                mined.add(result.join());
+            }
+            return mined;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> hasTransactionAsync(String txId) {
+        return web3j.ethGetTransactionByHash(txId).sendAsync().thenApply(reply -> {
+            if (reply.hasError()) {
+                throw new RuntimeException("eth_getTransactionByHash: " + reply.getError().getMessage());
+            }
+            return reply.getTransaction().isPresent();
+        });
     }
 }
@@ -0,0 +1,101 @@
+package io.github.coinj.chains;
+
+import io.github.coinj.PackedData;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigInteger;
+
+public class EthereumPackedData implements PackedData {
+    private final BigInteger nonce;
+    private final BigInteger gasPrice;
+    private final BigInteger gasLimit;
+    private final String to;
+    private final BigInteger value;
+    private final byte[] data;
+
+    public EthereumPackedData(BigInteger nonce, BigInteger gasPrice, BigInteger gasLimit, String to, BigInteger value, byte[] data) {
+        this.nonce = nonce;
+        this.gasPrice = gasPrice;
+        this.gasLimit = gasLimit;
+        this.to = to;
+        this.value = value;
+        this.data = data;
+    }
+
+    public BigInteger getNonce() {
+        return nonce;
+    }
+
+    public BigInteger getGasPrice() {
+        return gasPrice;
+    }
+
+    public BigInteger getGasLimit() {
+        return gasLimit;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public BigInteger getValue() {
+        return value;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    @Override
+    public byte getTag() {
+        return ETHEREUM;
+    }
+
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        writeBigInteger(out, nonce);
+        writeBigInteger(out, gasPrice);
+        writeBigInteger(out, gasLimit);
+        out.writeUTF(to);
+        writeBigInteger(out, value);
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    public static EthereumPackedData readFrom(DataInput in) throws IOException {
+        BigInteger nonce = readBigInteger(in);
+        BigInteger gasPrice = readBigInteger(in);
+        BigInteger gasLimit = readBigInteger(in);
+        String to = in.readUTF();
+        BigInteger value = readBigInteger(in);
+        byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+        return new EthereumPackedData(nonce, gasPrice, gasLimit, to, value, data);
+    }
+
+    private static void writeBigInteger(DataOutput out, BigInteger value) throws IOException {
+        byte[] bytes = value.toByteArray();
+        out.writeByte(bytes.length);
+        out.write(bytes);
+    }
+
+    private static BigInteger readBigInteger(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedByte()];
+        in.readFully(bytes);
+        return new BigInteger(bytes);
+    }
+
+    public static class Reader implements PackedData.Reader {
+        @Override
+        public byte getTag() {
+            return ETHEREUM;
+        }
+
+        @Override
+        public EthereumPackedData readFrom(DataInput in) throws IOException {
+            return EthereumPackedData.readFrom(in);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package io.github.coinj.chains;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface FeeOracle<T> {
+    /**
+     * The fee rate for confirmation within the given number of blocks.
+     */
+    CompletableFuture<T> getFee(int target);
+}
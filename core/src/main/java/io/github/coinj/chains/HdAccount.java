@@ -0,0 +1,141 @@
+package io.github.coinj.chains;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import io.github.coinj.KeyPair;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.crypto.ChildNumber;
+import org.bitcoinj.crypto.DeterministicKey;
+import org.bitcoinj.crypto.HDDerivationException;
+import org.bitcoinj.crypto.HDKeyDerivation;
+import org.bitcoinj.crypto.HDUtils;
+import org.bouncycastle.math.ec.ECPoint;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * BIP32 account, such as m/84'/0'/0', handing out receive and change addresses. The keys of its two chains are
+ * derived once, so an address costs a single child derivation, and bulk derivation is split over a fork join pool.
+ * An account built from an extended public key is watching only: it derives addresses but no private keys.
+ */
+public class HdAccount {
+    public static final int RECEIVE = 0;
+    public static final int CHANGE = 1;
+
+    private static final int BATCH_SIZE = 256;
+
+    private final DeterministicKey accountKey;
+    private final DeterministicKey[] chainKeys;
+    // Public derivation is all addresses need, and skips multiplying out each child's private key
+    private final DeterministicKey[] publicChainKeys;
+    private final Function<ECKey, String> addressEncoder;
+    private ForkJoinPool derivationPool = ForkJoinPool.commonPool();
+
+    public HdAccount(DeterministicKey accountKey, Function<ECKey, String> addressEncoder) {
+        this.accountKey = Preconditions.checkNotNull(accountKey);
+        this.addressEncoder = Preconditions.checkNotNull(addressEncoder);
+        this.chainKeys = new DeterministicKey[2];
+        this.publicChainKeys = new DeterministicKey[2];
+        for (int chain = RECEIVE; chain <= CHANGE; chain++) {
+            chainKeys[chain] = HDKeyDerivation.deriveChildKey(accountKey, new ChildNumber(chain, false));
+            publicChainKeys[chain] = chainKeys[chain].dropPrivateBytes();
+        }
+    }
+
+    /**
+     * Derives the key of m/purpose'/coinType'/account' from a BIP32 seed, such as one from
+     * {@link org.bitcoinj.crypto.MnemonicCode#toSeed(List, String)}.
+     */
+    public static DeterministicKey accountKey(byte[] seed, int purpose, int coinType, int account) {
+        DeterministicKey key = HDKeyDerivation.createMasterPrivateKey(seed);
+        for (ChildNumber childNumber : path(purpose, coinType, account)) {
+            key = HDKeyDerivation.deriveChildKey(key, childNumber);
+        }
+        return key;
+    }
+
+    public static List<ChildNumber> path(int purpose, int coinType, int account) {
+        return ImmutableList.of(new ChildNumber(purpose, true), new ChildNumber(coinType, true), new ChildNumber(account, true));
+    }
+
+    public DeterministicKey getAccountKey() {
+        return accountKey;
+    }
+
+    public boolean isWatching() {
+        return accountKey.isPubKeyOnly();
+    }
+
+    public ForkJoinPool getDerivationPool() {
+        return derivationPool;
+    }
+
+    public void setDerivationPool(ForkJoinPool derivationPool) {
+        this.derivationPool = Preconditions.checkNotNull(derivationPool);
+    }
+
+    public String getAddress(int index) {
+        return getAddress(RECEIVE, index);
+    }
+
+    public String getAddress(int chain, int index) {
+        // A negative index is a hardened child number, which public derivation cannot reach
+        Preconditions.checkArgument(index >= 0, "Negative index %s", index);
+        return addressEncoder.apply(ECKey.fromPublicOnly(childPoint(publicChainKeys[chain], index).getEncoded(true)));
+    }
+
+    /**
+     * Derives the addresses {@code from} to {@code from + count - 1} of the chain, in parallel batches.
+     */
+    public List<String> getAddresses(int chain, int from, int count) {
+        Preconditions.checkArgument(from >= 0 && count >= 0 && from + count >= 0, "Invalid range %s+%s", from, count);
+        DeterministicKey chainKey = publicChainKeys[chain];
+        String[] addresses = new String[count];
+        int batches = (count + BATCH_SIZE - 1) / BATCH_SIZE;
+        derivationPool.submit(() -> IntStream.range(0, batches).parallel().forEach(batch -> {
+            int start = batch * BATCH_SIZE;
+            ECPoint[] points = new ECPoint[Math.min(BATCH_SIZE, count - start)];
+            for (int i = 0; i < points.length; i++) {
+                points[i] = childPoint(chainKey, from + start + i);
+            }
+            // One field inversion brings the whole batch to affine coordinates
+            ECKey.CURVE.getCurve().normalizeAll(points);
+            for (int i = 0; i < points.length; i++) {
+                addresses[start + i] = addressEncoder.apply(ECKey.fromPublicOnly(points[i].getEncoded(true)));
+            }
+        })).join();
+        return Arrays.asList(addresses);
+    }
+
+    // BIP32 public child derivation, leaving the point in projective coordinates and skipping the DeterministicKey
+    private static ECPoint childPoint(DeterministicKey parent, int index) {
+        byte[] data = ByteBuffer.allocate(37).put(parent.getPubKey()).putInt(index).array();
+        byte[] i = HDUtils.hmacSha512(parent.getChainCode(), data);
+        BigInteger il = new BigInteger(1, Arrays.copyOf(i, 32));
+        if (il.compareTo(ECKey.CURVE.getN()) >= 0) {
+            throw new HDDerivationException("Illegal derived key: I_L >= n");
+        }
+        ECPoint point = ECKey.publicPointFromPrivate(il).add(parent.getPubKeyPoint());
+        if (point.isInfinity()) {
+            throw new HDDerivationException("Illegal derived key: derived public key equals infinity");
+        }
+        return point;
+    }
+
+    public DeterministicKey getKey(int chain, int index) {
+        Preconditions.checkArgument(index >= 0, "Negative index %s", index);
+        return HDKeyDerivation.deriveChildKey(chainKeys[chain], new ChildNumber(index, false));
+    }
+
+    public KeyPair getKeyPair(int chain, int index) {
+        Preconditions.checkState(!isWatching(), "Watching account has no private keys");
+        DeterministicKey key = getKey(chain, index);
+        return new KeyPair(key.getPrivateKeyAsHex(), addressEncoder.apply(key));
+    }
+}
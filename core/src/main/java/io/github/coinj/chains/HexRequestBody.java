@@ -0,0 +1,90 @@
+package io.github.coinj.chains;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Request body that hex encodes binary payloads between fixed text while it is written to the socket, so the hex
+ * strings and the JSON around them are never materialized.
+ */
+class HexRequestBody extends RequestBody {
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final int CHUNK_SIZE = 4096;
+
+    private final MediaType contentType;
+    // byte[] segments are written as they are, ByteBuffer segments hex encoded
+    private final List<Object> segments;
+
+    private HexRequestBody(MediaType contentType, List<Object> segments) {
+        this.contentType = contentType;
+        this.segments = segments;
+    }
+
+    HexRequestBody(MediaType contentType, String prefix, ByteBuffer payload, String suffix) {
+        this(contentType, new Builder().text(prefix).hex(payload).text(suffix).segments);
+    }
+
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() {
+        long length = 0;
+        for (Object segment : segments) {
+            length += segment instanceof byte[] ? ((byte[]) segment).length : 2L * ((ByteBuffer) segment).remaining();
+        }
+        return length;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        byte[] chunk = null;
+        for (Object segment : segments) {
+            if (segment instanceof byte[]) {
+                sink.write((byte[]) segment);
+                continue;
+            }
+            // Retries write the body again, so never consume the shared buffer
+            ByteBuffer bytes = ((ByteBuffer) segment).duplicate();
+            if (chunk == null) {
+                chunk = new byte[2 * CHUNK_SIZE];
+            }
+            while (bytes.hasRemaining()) {
+                int length = 0;
+                while (bytes.hasRemaining() && length < chunk.length) {
+                    int b = bytes.get() & 0xff;
+                    chunk[length++] = HEX_DIGITS[b >>> 4];
+                    chunk[length++] = HEX_DIGITS[b & 0x0f];
+                }
+                sink.write(chunk, 0, length);
+            }
+        }
+    }
+
+    static class Builder {
+        private final List<Object> segments = new ArrayList<>();
+
+        Builder text(String text) {
+            segments.add(text.getBytes(StandardCharsets.UTF_8));
+            return this;
+        }
+
+        Builder hex(ByteBuffer payload) {
+            segments.add(payload.duplicate());
+            return this;
+        }
+
+        HexRequestBody build(MediaType contentType) {
+            return new HexRequestBody(contentType, new ArrayList<>(segments));
+        }
+    }
+}
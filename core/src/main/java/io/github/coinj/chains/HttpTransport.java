@@ -0,0 +1,424 @@
+package io.github.coinj.chains;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import okhttp3.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * HTTP transport of a chain over one or more equivalent backend URLs. Every call has a deadline covering all of its
+ * attempts. Failed attempts are retried with exponential backoff on the next endpoint, and when several endpoints
+ * are configured a call that is still running after the hedge delay is also sent to the next fastest one; the first
+ * answer wins. Endpoints failing repeatedly are skipped until their circuit breaker lets a trial call through.
+ * Requests must be safe to repeat; broadcasting the same signed transaction twice is.
+ */
+public class HttpTransport implements Closeable {
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    public static final Duration DEFAULT_READ_TIMEOUT = Duration.ofSeconds(15);
+    public static final Duration DEFAULT_DEADLINE = Duration.ofSeconds(30);
+    public static final int DEFAULT_MAX_RETRIES = 2;
+    public static final Duration DEFAULT_RETRY_BACKOFF = Duration.ofMillis(200);
+    public static final Duration DEFAULT_HEDGE_DELAY = Duration.ofMillis(500);
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(30);
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 16;
+
+    private static final ScheduledThreadPoolExecutor SCHEDULER = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "coinj-transport");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        // Nearly every deadline timer is cancelled, don't keep them queued until they would have fired
+        SCHEDULER.setRemoveOnCancelPolicy(true);
+    }
+
+    private final List<Endpoint> endpoints;
+    private final Dispatcher dispatcher = new Dispatcher();
+    private final OkHttpClient client;
+    private final long deadlineNanos;
+    private final int maxRetries;
+    private final long retryBackoffNanos;
+    private final long hedgeDelayNanos;
+    private volatile MetricsListener metrics = MetricsListener.NONE;
+
+    private HttpTransport(Builder builder) {
+        Preconditions.checkArgument(!builder.endpoints.isEmpty(), "No endpoints");
+        List<Endpoint> endpoints = new ArrayList<>();
+        for (String url : builder.endpoints) {
+            endpoints.add(new Endpoint(url, builder.failureThreshold, builder.openDuration.toNanos()));
+        }
+        this.endpoints = ImmutableList.copyOf(endpoints);
+        setMaxConcurrentRequests(builder.maxConcurrentRequests);
+        OkHttpClient.Builder client = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(builder.maxConcurrentRequests, 5, TimeUnit.MINUTES))
+                .dispatcher(dispatcher)
+                .connectTimeout(builder.connectTimeout)
+                .readTimeout(builder.readTimeout)
+                .writeTimeout(builder.readTimeout)
+                .retryOnConnectionFailure(false);
+        for (Interceptor interceptor : builder.interceptors) {
+            client.addInterceptor(interceptor);
+        }
+        this.client = client.build();
+        this.deadlineNanos = builder.deadline.toNanos();
+        this.maxRetries = builder.maxRetries;
+        this.retryBackoffNanos = builder.retryBackoff.toNanos();
+        this.hedgeDelayNanos = builder.hedgeDelay.toNanos();
+    }
+
+    public static HttpTransport of(String url) {
+        return new Builder().endpoint(url).build();
+    }
+
+    public List<String> getEndpoints() {
+        List<String> urls = new ArrayList<>(endpoints.size());
+        for (Endpoint endpoint : endpoints) {
+            urls.add(endpoint.url);
+        }
+        return urls;
+    }
+
+    public int getMaxConcurrentRequests() {
+        return dispatcher.getMaxRequests();
+    }
+
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        dispatcher.setMaxRequests(maxConcurrentRequests);
+        dispatcher.setMaxRequestsPerHost(maxConcurrentRequests);
+    }
+
+    public MetricsListener getMetricsListener() {
+        return metrics;
+    }
+
+    public void setMetricsListener(MetricsListener metrics) {
+        this.metrics = Preconditions.checkNotNull(metrics);
+    }
+
+    /**
+     * Reads a successful response. Parsers that stream the body must be safe to run for several attempts at once.
+     */
+    public interface BodyParser<T> {
+        T parse(ResponseBody body) throws IOException;
+    }
+
+    public CompletableFuture<String> get(String path) {
+        return get(path, ResponseBody::string);
+    }
+
+    public <T> CompletableFuture<T> get(String path, BodyParser<T> parser) {
+        return new Exchange<>(path, null, parser).start();
+    }
+
+    public CompletableFuture<String> post(String path, RequestBody body) {
+        return new Exchange<>(path, body, ResponseBody::string).start();
+    }
+
+    @Override
+    /**
+     * Closes the idle connections and stops the dispatcher's threads once the requests in flight are done; requests
+     * made after fail.
+     */
+    public void close() {
+        dispatcher.executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    private static boolean isRetriable(int code) {
+        return code == 429 || code >= 500;
+    }
+
+    private class Exchange<T> {
+        private final String path;
+        private final RequestBody body;
+        private final BodyParser<T> parser;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final long deadline = System.nanoTime() + deadlineNanos;
+        private final Set<Endpoint> tried = new HashSet<>();
+        private final List<Call> calls = new ArrayList<>();
+        private final List<ScheduledFuture<?>> timers = new ArrayList<>();
+        private int running;
+        private int retries;
+
+        Exchange(String path, RequestBody body, BodyParser<T> parser) {
+            this.path = path;
+            this.body = body;
+            this.parser = parser;
+        }
+
+        CompletableFuture<T> start() {
+            schedule(() -> result.completeExceptionally(new InterruptedIOException("Deadline exceeded")), deadlineNanos);
+            result.whenComplete((value, e) -> cancel());
+            attempt();
+            return result;
+        }
+
+        private synchronized void attempt() {
+            if (result.isDone()) {
+                return;
+            }
+            long now = System.nanoTime();
+            Endpoint endpoint = pick(now);
+            if (endpoint == null) {
+                if (running == 0) {
+                    result.completeExceptionally(new IOException("No available endpoint for " + path));
+                }
+                return;
+            }
+            tried.add(endpoint);
+            endpoint.acquire();
+            running++;
+
+            Request.Builder request = new Request.Builder().url(endpoint.url + path);
+            if (body != null) {
+                request.post(body);
+            }
+            Call call = client.newCall(request.build());
+            call.timeout().timeout(Math.max(1, deadline - now), TimeUnit.NANOSECONDS);
+            calls.add(call);
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    if (call.isCanceled()) {
+                        endpoint.release();
+                    } else {
+                        endpoint.failure(System.nanoTime());
+                        metrics.onRequest(endpoint.url, System.nanoTime() - now, -1);
+                    }
+                    failed(e);
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    metrics.onRequest(endpoint.url, System.nanoTime() - now, response.code());
+                    try (ResponseBody responseBody = response.body()) {
+                        if (response.isSuccessful()) {
+                            T parsed = parser.parse(Objects.requireNonNull(responseBody));
+                            endpoint.success(System.nanoTime() - now);
+                            result.complete(parsed);
+                            return;
+                        }
+                        String content = responseBody == null ? "" : responseBody.string();
+                        if (isRetriable(response.code())) {
+                            endpoint.failure(System.nanoTime());
+                            failed(new IOException("HTTP " + response.code() + " from " + endpoint.url + ": " + content));
+                        } else {
+                            // The node is fine, the request is not; another node would answer the same
+                            endpoint.success(System.nanoTime() - now);
+                            result.completeExceptionally(new IOException("HTTP " + response.code() + " from " + endpoint.url + ": " + content));
+                        }
+                    } catch (IOException e) {
+                        if (call.isCanceled()) {
+                            endpoint.release();
+                        } else {
+                            endpoint.failure(System.nanoTime());
+                        }
+                        failed(e);
+                    } catch (RuntimeException e) {
+                        // A malformed body, asking again would not help
+                        endpoint.success(System.nanoTime() - now);
+                        result.completeExceptionally(e);
+                    }
+                }
+            });
+            if (hedgeDelayNanos > 0 && tried.size() < endpoints.size()) {
+                schedule(this::attempt, hedgeDelayNanos);
+            }
+        }
+
+        // Fastest untried endpoint whose circuit is closed or ready for a trial, then the fastest tried one
+        private Endpoint pick(long now) {
+            Endpoint fastest = null;
+            for (Endpoint endpoint : endpoints) {
+                if (!tried.contains(endpoint) && endpoint.isAvailable(now) && (fastest == null || endpoint.latencyNanos < fastest.latencyNanos)) {
+                    fastest = endpoint;
+                }
+            }
+            if (fastest != null || running > 0) {
+                return fastest;
+            }
+            for (Endpoint endpoint : endpoints) {
+                if (endpoint.isAvailable(now) && (fastest == null || endpoint.latencyNanos < fastest.latencyNanos)) {
+                    fastest = endpoint;
+                }
+            }
+            return fastest;
+        }
+
+        private synchronized void failed(IOException e) {
+            running--;
+            if (result.isDone() || running > 0) {
+                // A hedged attempt is still running and may yet succeed
+                return;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (retries >= maxRetries || remaining <= 0) {
+                result.completeExceptionally(e);
+                return;
+            }
+            long backoff = retryBackoffNanos << retries++;
+            long jittered = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+            if (jittered >= remaining) {
+                result.completeExceptionally(e);
+                return;
+            }
+            metrics.onRetry();
+            schedule(this::attempt, jittered);
+        }
+
+        private synchronized void schedule(Runnable task, long delayNanos) {
+            timers.add(SCHEDULER.schedule(task, delayNanos, TimeUnit.NANOSECONDS));
+        }
+
+        private synchronized void cancel() {
+            for (Call call : calls) {
+                call.cancel();
+            }
+            for (ScheduledFuture<?> timer : timers) {
+                timer.cancel(false);
+            }
+        }
+    }
+
+    private static class Endpoint {
+        private final String url;
+        private final int failureThreshold;
+        private final long openNanos;
+        // Smoothed latency of successful calls, endpoints that were never used come first
+        private volatile long latencyNanos;
+        private int failures;
+        private long openUntil;
+        private boolean trialRunning;
+
+        Endpoint(String url, int failureThreshold, long openNanos) {
+            this.url = url;
+            this.failureThreshold = failureThreshold;
+            this.openNanos = openNanos;
+        }
+
+        synchronized boolean isAvailable(long now) {
+            return failures < failureThreshold || (now - openUntil >= 0 && !trialRunning);
+        }
+
+        synchronized void acquire() {
+            if (failures >= failureThreshold) {
+                trialRunning = true;
+            }
+        }
+
+        // A cancelled trial says nothing about the endpoint
+        synchronized void release() {
+            trialRunning = false;
+        }
+
+        synchronized void success(long latency) {
+            failures = 0;
+            trialRunning = false;
+            latencyNanos = latencyNanos == 0 ? latency : (latencyNanos * 7 + latency) / 8;
+        }
+
+        synchronized void failure(long now) {
+            failures++;
+            trialRunning = false;
+            if (failures >= failureThreshold) {
+                openUntil = now + openNanos;
+            }
+        }
+    }
+
+    public static class Builder {
+        private final List<String> endpoints = new ArrayList<>();
+        private Duration connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+        private Duration readTimeout = DEFAULT_READ_TIMEOUT;
+        private Duration deadline = DEFAULT_DEADLINE;
+        private int maxRetries = DEFAULT_MAX_RETRIES;
+        private Duration retryBackoff = DEFAULT_RETRY_BACKOFF;
+        private Duration hedgeDelay = DEFAULT_HEDGE_DELAY;
+        private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+        private Duration openDuration = DEFAULT_OPEN_DURATION;
+        private int maxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
+        private final List<Interceptor> interceptors = new ArrayList<>();
+
+        public Builder endpoint(String url) {
+            endpoints.add(url);
+            return this;
+        }
+
+        public Builder endpoints(List<String> urls) {
+            endpoints.addAll(urls);
+            return this;
+        }
+
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        public Builder readTimeout(Duration readTimeout) {
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        public Builder deadline(Duration deadline) {
+            this.deadline = deadline;
+            return this;
+        }
+
+        public Builder maxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        public Builder retryBackoff(Duration retryBackoff) {
+            this.retryBackoff = retryBackoff;
+            return this;
+        }
+
+        /**
+         * Zero disables hedging.
+         */
+        public Builder hedgeDelay(Duration hedgeDelay) {
+            this.hedgeDelay = hedgeDelay;
+            return this;
+        }
+
+        public Builder failureThreshold(int failureThreshold) {
+            this.failureThreshold = failureThreshold;
+            return this;
+        }
+
+        public Builder openDuration(Duration openDuration) {
+            this.openDuration = openDuration;
+            return this;
+        }
+
+        public Builder maxConcurrentRequests(int maxConcurrentRequests) {
+            this.maxConcurrentRequests = maxConcurrentRequests;
+            return this;
+        }
+
+        /**
+         * Adds an application interceptor to every call, for instance one answering them in process.
+         */
+        public Builder interceptor(Interceptor interceptor) {
+            interceptors.add(interceptor);
+            return this;
+        }
+
+        public HttpTransport build() {
+            return new HttpTransport(this);
+        }
+    }
+}
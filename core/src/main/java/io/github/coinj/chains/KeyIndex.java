@@ -0,0 +1,62 @@
+package io.github.coinj.chains;
+
+import com.google.common.hash.HashCode;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.script.ScriptBuilder;
+import org.bitcoinj.script.ScriptPattern;
+import org.bouncycastle.pqc.math.linearalgebra.ByteUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Private keys indexed by the hash of their public key, so each key is parsed and multiplied out once
+ * no matter how many inputs it signs. An index can be reused across sign calls.
+ */
+public class KeyIndex {
+    private final Map<HashCode, ECKey> keys;
+    // P2SH-P2WPKH outputs only commit to the hash of the key's witness program
+    private final Map<HashCode, ECKey> nestedSegwitKeys;
+
+    public KeyIndex(List<String> keys) {
+        this.keys = keys.parallelStream()
+                .map(key -> ECKey.fromPrivate(ByteUtils.fromHexString(key)))
+                .collect(Collectors.toMap(ecKey -> HashCode.fromBytes(ecKey.getPubKeyHash()), ecKey -> ecKey, (first, second) -> first));
+        this.nestedSegwitKeys = new HashMap<>();
+        for (ECKey ecKey : this.keys.values()) {
+            nestedSegwitKeys.put(HashCode.fromBytes(Utils.sha256hash160(redeemScript(ecKey).getProgram())), ecKey);
+        }
+    }
+
+    static Script redeemScript(ECKey ecKey) {
+        return ScriptBuilder.createP2WPKHOutputScript(ecKey);
+    }
+
+    public ECKey findByPubKeyHash(byte[] pubKeyHash) {
+        return keys.get(HashCode.fromBytes(pubKeyHash));
+    }
+
+    public ECKey findByScript(Script scriptPubKey) {
+        if (ScriptPattern.isP2PKH(scriptPubKey)) {
+            return findByPubKeyHash(ScriptPattern.extractHashFromP2PKH(scriptPubKey));
+        }
+        if (ScriptPattern.isP2WPKH(scriptPubKey)) {
+            return findByPubKeyHash(ScriptPattern.extractHashFromP2WH(scriptPubKey));
+        }
+        if (ScriptPattern.isP2PK(scriptPubKey)) {
+            return findByPubKeyHash(Utils.sha256hash160(ScriptPattern.extractKeyFromP2PK(scriptPubKey)));
+        }
+        if (ScriptPattern.isP2SH(scriptPubKey)) {
+            return nestedSegwitKeys.get(HashCode.fromBytes(ScriptPattern.extractHashFromP2SH(scriptPubKey)));
+        }
+        return null;
+    }
+
+    public int size() {
+        return keys.size();
+    }
+}
@@ -0,0 +1,449 @@
+package io.github.coinj.chains;
+
+import com.google.common.base.Preconditions;
+import org.bitcoinj.core.Utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+/**
+ * Unspent outputs of watched addresses kept in a memory-mapped file, so that they survive restarts and packing does
+ * not have to ask the backend for them. The file holds fixed size slots, one per output or watched address; freed
+ * slots are reused. The indexes by address and by outpoint live in memory and are rebuilt from the file on open.
+ * The block height the store was last synced at is kept in the file header,
+ * see {@link BitcoinChain#syncUtxoStore(MappedUtxoStore)}.
+ */
+public class MappedUtxoStore implements UtxoCache, Closeable {
+    private static final Logger log = Logger.getLogger(MappedUtxoStore.class.getName());
+
+    private static final int MAGIC = 0x434a5553;
+    private static final int VERSION = 1;
+    private static final int INITIAL_SLOTS = 1024;
+
+    // Header: magic, version, slot count, synced height
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOTS_OFFSET = 8;
+    private static final int HEIGHT_OFFSET = 16;
+
+    // Slot: kind, transaction id, index, value, length prefixed address, length prefixed script
+    private static final int SLOT_SIZE = 192;
+    private static final int TX_ID_OFFSET = 1;
+    private static final int INDEX_OFFSET = 33;
+    private static final int VALUE_OFFSET = 37;
+    private static final int ADDRESS_OFFSET = 45;
+    private static final int SCRIPT_OFFSET = 109;
+    private static final int MAX_ADDRESS_SIZE = SCRIPT_OFFSET - ADDRESS_OFFSET - 1;
+    private static final int MAX_SCRIPT_SIZE = SLOT_SIZE - SCRIPT_OFFSET - 1;
+    private static final int TX_ID_SIZE = INDEX_OFFSET - TX_ID_OFFSET;
+
+    private static final byte FREE = 0;
+    private static final byte OUTPUT = 1;
+    // An address slot is written as watched and marked loaded once its outputs have been stored
+    private static final byte WATCHED = 2;
+    private static final byte LOADED = 3;
+
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int slots;
+    private long syncedHeight;
+
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private final Map<String, Integer> addressSlots = new HashMap<>();
+    private final Map<String, Set<Integer>> byAddress = new HashMap<>();
+    private final Map<Outpoint, Integer> byOutpoint = new HashMap<>();
+    // Addresses whose outputs may be out of date in this process; the next get goes to the backend
+    private final Set<String> stale = new HashSet<>();
+    // Moved on by update and invalidate for watched addresses, see UtxoCache#getVersion
+    private final Map<String, Long> versions = new HashMap<>();
+    private long changes;
+
+    public MappedUtxoStore(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            boolean created = channel.size() == 0;
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    Math.max(channel.size(), HEADER_SIZE + (long) INITIAL_SLOTS * SLOT_SIZE));
+            if (created) {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(SLOTS_OFFSET, 0);
+                buffer.putLong(HEIGHT_OFFSET, -1);
+                buffer.force();
+            } else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a utxo store: " + file);
+            }
+            slots = buffer.getInt(SLOTS_OFFSET);
+            syncedHeight = buffer.getLong(HEIGHT_OFFSET);
+            for (int slot = 0; slot < slots; slot++) {
+                load(slot);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void load(int slot) {
+        int offset = offset(slot);
+        switch (buffer.get(offset)) {
+            case OUTPUT:
+                byAddress.computeIfAbsent(readAddress(offset), address -> new TreeSet<>()).add(slot);
+                byOutpoint.put(readOutpoint(offset), slot);
+                break;
+            case WATCHED:
+            case LOADED:
+                String address = readAddress(offset);
+                addressSlots.put(address, slot);
+                byAddress.computeIfAbsent(address, a -> new TreeSet<>());
+                break;
+            default:
+                freeSlots.add(slot);
+        }
+    }
+
+    /**
+     * Returns the block height the store was last synced at, or -1 when it never was.
+     */
+    public synchronized long getSyncedHeight() {
+        return syncedHeight;
+    }
+
+    /**
+     * Records the height the store is synced at and flushes the file, so a restart picks up from there.
+     */
+    public synchronized void setSyncedHeight(long height) {
+        checkOpen();
+        buffer.putLong(HEIGHT_OFFSET, height);
+        buffer.force();
+        syncedHeight = height;
+    }
+
+    public synchronized Set<String> getAddresses() {
+        return new LinkedHashSet<>(addressSlots.keySet());
+    }
+
+    /**
+     * Starts keeping the outputs of the address; they are fetched by the next sync.
+     */
+    public synchronized void watch(String address) {
+        checkOpen();
+        if (!addressSlots.containsKey(address)) {
+            Preconditions.checkArgument(address.length() <= MAX_ADDRESS_SIZE, "Address too long: %s", address);
+            int slot = allocate();
+            int offset = offset(slot);
+            writeAddress(offset, address);
+            buffer.put(offset, WATCHED);
+            addressSlots.put(address, slot);
+            byAddress.computeIfAbsent(address, a -> new TreeSet<>());
+            changed(address);
+        }
+    }
+
+    public synchronized void unwatch(String address) {
+        checkOpen();
+        Integer addressSlot = addressSlots.remove(address);
+        Set<Integer> outputSlots = byAddress.remove(address);
+        if (outputSlots != null) {
+            for (int slot : outputSlots) {
+                byOutpoint.remove(readOutpoint(offset(slot)));
+                free(slot);
+            }
+        }
+        if (addressSlot != null) {
+            free(addressSlot);
+        }
+        stale.remove(address);
+        versions.remove(address);
+    }
+
+    /**
+     * Returns the addresses a sync to the given height has to fetch: all of them once the chain has moved past the
+     * synced height, otherwise only those whose outputs were never loaded or went stale.
+     */
+    synchronized Set<String> addressesToSync(long height) {
+        if (height > syncedHeight) {
+            return getAddresses();
+        }
+        Set<String> addresses = new LinkedHashSet<>(stale);
+        for (Map.Entry<String, Integer> entry : addressSlots.entrySet()) {
+            if (buffer.get(offset(entry.getValue())) != LOADED) {
+                addresses.add(entry.getKey());
+            }
+        }
+        return addresses;
+    }
+
+    @Override
+    public synchronized List<UnspentOutput> get(String address) {
+        checkOpen();
+        Integer addressSlot = addressSlots.get(address);
+        if (addressSlot == null || buffer.get(offset(addressSlot)) != LOADED || stale.contains(address)) {
+            return null;
+        }
+        UtxoSet.Builder builder = new UtxoSet.Builder();
+        for (int slot : byAddress.get(address)) {
+            int offset = offset(slot);
+            builder.add(readBytes(offset + TX_ID_OFFSET, TX_ID_SIZE), buffer.getInt(offset + INDEX_OFFSET), address,
+                    readBytes(offset + SCRIPT_OFFSET + 1, buffer.get(offset + SCRIPT_OFFSET) & 0xff),
+                    buffer.getLong(offset + VALUE_OFFSET));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Replaces the outputs of a watched address with those fetched from the backend; other addresses are ignored.
+     * Only the differences are written.
+     */
+    @Override
+    public synchronized void put(String address, List<UnspentOutput> unspentOutputs) {
+        checkOpen();
+        Integer addressSlot = addressSlots.get(address);
+        if (addressSlot == null) {
+            return;
+        }
+        // Until the last write is done, a crash leaves the address to be fetched again
+        int addressOffset = offset(addressSlot);
+        buffer.put(addressOffset, WATCHED);
+        for (UnspentOutput output : unspentOutputs) {
+            if (!fits(output)) {
+                // Kept by the backend alone rather than stored incomplete, the address stays watched
+                log.warning("Unspent output " + output.getTxId() + ":" + output.getIndex() + " of " + address
+                        + " does not fit in a slot, its outputs are read from the backend");
+                return;
+            }
+        }
+        Map<Outpoint, UnspentOutput> fetched = new HashMap<>();
+        for (UnspentOutput output : unspentOutputs) {
+            fetched.put(new Outpoint(output), output);
+        }
+        Set<Integer> outputSlots = byAddress.get(address);
+        for (int slot : outputSlots.toArray(new Integer[0])) {
+            Outpoint outpoint = readOutpoint(offset(slot));
+            if (fetched.remove(outpoint) == null) {
+                removeOutput(outpoint, slot);
+            }
+        }
+        for (Map.Entry<Outpoint, UnspentOutput> entry : fetched.entrySet()) {
+            addOutput(entry.getKey(), address, entry.getValue());
+        }
+        buffer.put(addressOffset, LOADED);
+        stale.remove(address);
+    }
+
+    @Override
+    public synchronized long getVersion(String address) {
+        return versions.getOrDefault(address, 0L);
+    }
+
+    @Override
+    public synchronized void put(String address, List<UnspentOutput> unspentOutputs, long version) {
+        if (getVersion(address) == version) {
+            put(address, unspentOutputs);
+        }
+    }
+
+    @Override
+    public synchronized void invalidate(String address) {
+        if (addressSlots.containsKey(address)) {
+            stale.add(address);
+            changed(address);
+        }
+    }
+
+    @Override
+    public synchronized void update(List<UnspentOutput> spent, List<UnspentOutput> created) {
+        checkOpen();
+        for (UnspentOutput output : spent) {
+            Outpoint outpoint = new Outpoint(output);
+            Integer slot = byOutpoint.get(outpoint);
+            if (slot != null) {
+                changed(readAddress(offset(slot)));
+                removeOutput(outpoint, slot);
+            } else if (output.getAddress() != null && addressSlots.containsKey(output.getAddress())) {
+                // Not loaded yet, a fetch in flight may still return it
+                changed(output.getAddress());
+            }
+        }
+        for (UnspentOutput output : created) {
+            String address = output.getAddress();
+            if (address == null || !addressSlots.containsKey(address)) {
+                continue;
+            }
+            changed(address);
+            Outpoint outpoint = new Outpoint(output);
+            if (!byOutpoint.containsKey(outpoint)) {
+                if (fits(output)) {
+                    addOutput(outpoint, address, output);
+                } else {
+                    stale.add(address);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes changes through to the disk. They survive a crash of the process without it, but not of the machine.
+     */
+    public synchronized void flush() {
+        checkOpen();
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (buffer != null) {
+            buffer.force();
+            buffer = null;
+            channel.close();
+        }
+    }
+
+    private void changed(String address) {
+        versions.put(address, ++changes);
+    }
+
+    private static boolean fits(UnspentOutput output) {
+        return output.getAddress() != null
+                && output.getTxId().length() == 2 * TX_ID_SIZE
+                && output.getAddress().length() <= MAX_ADDRESS_SIZE
+                && output.getScript().length() / 2 <= MAX_SCRIPT_SIZE;
+    }
+
+    private void addOutput(Outpoint outpoint, String address, UnspentOutput output) {
+        int slot = allocate();
+        int offset = offset(slot);
+        ByteBuffer record = slice(offset);
+        record.position(TX_ID_OFFSET);
+        record.put(outpoint.txId);
+        record.putInt(outpoint.index);
+        record.putLong(output.getValue());
+        writeAddress(offset, address);
+        byte[] script = Utils.HEX.decode(output.getScript());
+        record.position(SCRIPT_OFFSET);
+        record.put((byte) script.length);
+        record.put(script);
+        // The kind goes last, a slot torn by a crash stays free
+        buffer.put(offset, OUTPUT);
+        byAddress.get(address).add(slot);
+        byOutpoint.put(outpoint, slot);
+    }
+
+    private void removeOutput(Outpoint outpoint, int slot) {
+        byOutpoint.remove(outpoint);
+        byAddress.get(readAddress(offset(slot))).remove(slot);
+        free(slot);
+    }
+
+    private int allocate() {
+        Integer slot = freeSlots.poll();
+        if (slot != null) {
+            return slot;
+        }
+        long required = HEADER_SIZE + (long) (slots + 1) * SLOT_SIZE;
+        if (required > buffer.capacity()) {
+            Preconditions.checkState(buffer.capacity() <= Integer.MAX_VALUE / 2, "Utxo store is full");
+            buffer.force();
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, buffer.capacity() * 2L);
+            } catch (IOException e) {
+                throw new RuntimeException("Could not grow utxo store", e);
+            }
+        }
+        buffer.put(offset(slots), FREE);
+        buffer.putInt(SLOTS_OFFSET, ++slots);
+        return slots - 1;
+    }
+
+    private void free(int slot) {
+        buffer.put(offset(slot), FREE);
+        freeSlots.add(slot);
+    }
+
+    private void checkOpen() {
+        Preconditions.checkState(buffer != null, "Utxo store is closed");
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private ByteBuffer slice(int offset) {
+        ByteBuffer record = buffer.duplicate();
+        record.position(offset);
+        record.limit(offset + SLOT_SIZE);
+        return record.slice();
+    }
+
+    private byte[] readBytes(int offset, int length) {
+        ByteBuffer source = buffer.duplicate();
+        source.position(offset);
+        byte[] bytes = new byte[length];
+        source.get(bytes);
+        return bytes;
+    }
+
+    private String readAddress(int offset) {
+        int length = buffer.get(offset + ADDRESS_OFFSET) & 0xff;
+        return new String(readBytes(offset + ADDRESS_OFFSET + 1, length), StandardCharsets.US_ASCII);
+    }
+
+    private void writeAddress(int offset, String address) {
+        ByteBuffer record = slice(offset);
+        record.position(ADDRESS_OFFSET);
+        byte[] bytes = address.getBytes(StandardCharsets.US_ASCII);
+        record.put((byte) bytes.length);
+        record.put(bytes);
+    }
+
+    private Outpoint readOutpoint(int offset) {
+        return new Outpoint(readBytes(offset + TX_ID_OFFSET, TX_ID_SIZE), buffer.getInt(offset + INDEX_OFFSET));
+    }
+
+    private static class Outpoint {
+        private final byte[] txId;
+        private final int index;
+
+        Outpoint(byte[] txId, int index) {
+            this.txId = txId;
+            this.index = index;
+        }
+
+        Outpoint(UnspentOutput output) {
+            this(Utils.HEX.decode(output.getTxId()), output.getIndex());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Outpoint)) {
+                return false;
+            }
+            Outpoint outpoint = (Outpoint) o;
+            return index == outpoint.index && Arrays.equals(txId, outpoint.txId);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(txId) + index;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package io.github.coinj.chains;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class MemoryUtxoCache implements UtxoCache {
+    public static final Duration DEFAULT_TTL = Duration.ofSeconds(30);
+    public static final long DEFAULT_MAXIMUM_SIZE = 10_000;
+
+    // Versions are kept per stripe of addresses, so they outlive evicted entries in bounded memory; addresses sharing
+    // a stripe only drop a few more fetches than they have to
+    private static final int VERSION_STRIPES = 1024;
+
+    private final Cache<String, Entry> cache;
+    private final Ticker ticker;
+    private final long ttlNanos;
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+    public MemoryUtxoCache() {
+        this(DEFAULT_TTL, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public MemoryUtxoCache(Duration ttl, long maximumSize) {
+        this(ttl, maximumSize, Ticker.systemTicker());
+    }
+
+    MemoryUtxoCache(Duration ttl, long maximumSize, Ticker ticker) {
+        Preconditions.checkArgument(!ttl.isNegative(), "Negative ttl");
+        this.ticker = ticker;
+        this.ttlNanos = ttl.toNanos();
+        this.cache = CacheBuilder.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maximumSize)
+                .ticker(ticker)
+                .build();
+    }
+
+    @Override
+    public List<UnspentOutput> get(String address) {
+        Entry entry = cache.getIfPresent(address);
+        if (entry == null || entry.isExpired(ticker.read())) {
+            return null;
+        }
+        return entry.unspentOutputs;
+    }
+
+    @Override
+    public void put(String address, List<UnspentOutput> unspentOutputs) {
+        cache.put(address, new Entry(ImmutableList.copyOf(unspentOutputs), ticker.read() + ttlNanos));
+    }
+
+    @Override
+    public long getVersion(String address) {
+        return versions.get(stripe(address));
+    }
+
+    @Override
+    public void put(String address, List<UnspentOutput> unspentOutputs, long version) {
+        Entry fetched = new Entry(ImmutableList.copyOf(unspentOutputs), ticker.read() + ttlNanos);
+        // Checked inside compute, an update either sees the fetched entry or has already moved the version on
+        cache.asMap().compute(address, (key, entry) -> versions.get(stripe(address)) == version ? fetched : entry);
+    }
+
+    @Override
+    public void invalidate(String address) {
+        versions.incrementAndGet(stripe(address));
+        cache.invalidate(address);
+    }
+
+    @Override
+    public void update(List<UnspentOutput> spent, List<UnspentOutput> created) {
+        // Grouped by address so every cached list is filtered and copied once, however many of its outputs were spent
+        Map<String, Set<Outpoint>> spentByAddress = new HashMap<>();
+        for (UnspentOutput output : spent) {
+            // Outputs without an address cannot be located; drop nothing rather than guess
+            if (output.getAddress() != null) {
+                spentByAddress.computeIfAbsent(output.getAddress(), address -> new HashSet<>())
+                        .add(new Outpoint(output.getTxId(), output.getIndex()));
+            }
+        }
+        Map<String, List<UnspentOutput>> createdByAddress = new HashMap<>();
+        for (UnspentOutput output : created) {
+            if (output.getAddress() != null) {
+                createdByAddress.computeIfAbsent(output.getAddress(), address -> new ArrayList<>()).add(output);
+            }
+        }
+        Set<String> addresses = new HashSet<>(spentByAddress.keySet());
+        addresses.addAll(createdByAddress.keySet());
+        ConcurrentMap<String, Entry> entries = cache.asMap();
+        for (String address : addresses) {
+            Set<Outpoint> spentOutpoints = spentByAddress.getOrDefault(address, Collections.emptySet());
+            List<UnspentOutput> createdOutputs = createdByAddress.getOrDefault(address, Collections.emptyList());
+            versions.incrementAndGet(stripe(address));
+            entries.computeIfPresent(address, (key, entry) -> entry.update(spentOutpoints, createdOutputs));
+        }
+    }
+
+    private static int stripe(String address) {
+        return address.hashCode() & (VERSION_STRIPES - 1);
+    }
+
+    // Updates keep the expiry of the original fetch, so deposits from elsewhere still show up after the ttl
+    private static class Entry {
+        private final List<UnspentOutput> unspentOutputs;
+        private final long expiresAt;
+
+        Entry(List<UnspentOutput> unspentOutputs, long expiresAt) {
+            this.unspentOutputs = unspentOutputs;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+
+        Entry update(Set<Outpoint> spent, List<UnspentOutput> created) {
+            Set<Integer> spentIndexes = new HashSet<>();
+            for (Outpoint outpoint : spent) {
+                spentIndexes.add(outpoint.index);
+            }
+            // A transaction sent again is applied again; outputs already cached are not added twice
+            Map<Outpoint, UnspentOutput> added = new LinkedHashMap<>();
+            Set<Integer> addedIndexes = new HashSet<>();
+            for (UnspentOutput output : created) {
+                added.putIfAbsent(new Outpoint(output.getTxId(), output.getIndex()), output);
+                addedIndexes.add(output.getIndex());
+            }
+            ImmutableList.Builder<UnspentOutput> remaining = ImmutableList.builderWithExpectedSize(unspentOutputs.size() + added.size());
+            for (UnspentOutput output : unspentOutputs) {
+                // The index rules most outputs out before their transaction id has to be read
+                if (spentIndexes.contains(output.getIndex()) && spent.contains(new Outpoint(output.getTxId(), output.getIndex()))) {
+                    continue;
+                }
+                remaining.add(output);
+                if (addedIndexes.contains(output.getIndex())) {
+                    added.remove(new Outpoint(output.getTxId(), output.getIndex()));
+                }
+            }
+            return new Entry(remaining.addAll(added.values()).build(), expiresAt);
+        }
+    }
+
+    private static class Outpoint {
+        private final String txId;
+        private final int index;
+
+        Outpoint(String txId, int index) {
+            this.txId = txId;
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Outpoint)) {
+                return false;
+            }
+            Outpoint other = (Outpoint) o;
+            return index == other.index && txId.equals(other.txId);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * txId.hashCode() + index;
+        }
+    }
+}
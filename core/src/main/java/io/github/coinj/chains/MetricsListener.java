@@ -0,0 +1,46 @@
+package io.github.coinj.chains;
+
+/**
+ * Receives timings and sizes from a chain and its transport. Every method does nothing by default. Calls come from
+ * whichever thread finished the work, so implementations must be thread safe and quick.
+ */
+public interface MetricsListener {
+    MetricsListener NONE = new MetricsListener() {
+    };
+
+    enum Stage {
+        PACK, SIGN,
+        // Backend calls
+        FETCH_UNSPENT_OUTPUTS, FETCH_FEE, FETCH_TIP, FETCH_GAS_PRICE, FETCH_NONCE, FETCH_TOKEN, ESTIMATE_GAS, BROADCAST
+    }
+
+    /**
+     * A stage finished, failing with the error unless it is null.
+     */
+    default void onStage(Stage stage, long nanos, Throwable error) {
+    }
+
+    default void onInputSigned(long nanos) {
+    }
+
+    /**
+     * The unspent outputs of an address were read, from the cache or from the backend.
+     */
+    default void onUnspentOutputs(int count, boolean cached) {
+    }
+
+    default void onTransactionSigned(int size, int inputs, int outputs) {
+    }
+
+    /**
+     * An attempt on an endpoint finished with the HTTP status, or -1 when it failed without one.
+     */
+    default void onRequest(String endpoint, long nanos, int status) {
+    }
+
+    /**
+     * The transport is retrying a request that failed on every endpoint it tried.
+     */
+    default void onRetry() {
+    }
+}
@@ -0,0 +1,112 @@
+package io.github.coinj.chains;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.net.URI;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes to a Micrometer registry, which is only needed on the classpath when this class is used:
+ * <ul>
+ * <li>{@code coinj.stage}, a timer tagged with the stage and its outcome</li>
+ * <li>{@code coinj.sign.input}, a timer of signing one input</li>
+ * <li>{@code coinj.http.request}, a timer tagged with the endpoint's host and the status, {@code IO_ERROR} without one</li>
+ * <li>{@code coinj.http.retries}, a counter</li>
+ * <li>{@code coinj.utxo.count}, the unspent outputs read per address, tagged with their source</li>
+ * <li>{@code coinj.tx.size}, {@code coinj.tx.inputs} and {@code coinj.tx.outputs} of signed transactions</li>
+ * </ul>
+ * Timers publish percentile histograms, so latencies can be aggregated across instances.
+ */
+public class MicrometerMetricsListener implements MetricsListener {
+    private final MeterRegistry registry;
+    private final Tags tags;
+    private final Map<Stage, Timer> succeeded = new EnumMap<>(Stage.class);
+    private final Map<Stage, Timer> failed = new EnumMap<>(Stage.class);
+    private final Timer signInput;
+    private final Counter retries;
+    private final DistributionSummary cachedUnspentOutputs;
+    private final DistributionSummary fetchedUnspentOutputs;
+    private final DistributionSummary txSize;
+    private final DistributionSummary txInputs;
+    private final DistributionSummary txOutputs;
+    private final ConcurrentMap<String, ConcurrentMap<Integer, Timer>> requests = new ConcurrentHashMap<>();
+
+    public MicrometerMetricsListener(MeterRegistry registry, String... tags) {
+        this(registry, Tags.of(tags));
+    }
+
+    public MicrometerMetricsListener(MeterRegistry registry, Iterable<Tag> tags) {
+        this.registry = registry;
+        this.tags = Tags.of(tags);
+        for (Stage stage : Stage.values()) {
+            succeeded.put(stage, stageTimer(stage, "success"));
+            failed.put(stage, stageTimer(stage, "error"));
+        }
+        this.signInput = timer("coinj.sign.input").register(registry);
+        this.retries = Counter.builder("coinj.http.retries").tags(this.tags).register(registry);
+        this.cachedUnspentOutputs = summary("coinj.utxo.count", null).tag("source", "cache").register(registry);
+        this.fetchedUnspentOutputs = summary("coinj.utxo.count", null).tag("source", "backend").register(registry);
+        this.txSize = summary("coinj.tx.size", "bytes").register(registry);
+        this.txInputs = summary("coinj.tx.inputs", null).register(registry);
+        this.txOutputs = summary("coinj.tx.outputs", null).register(registry);
+    }
+
+    private Timer.Builder timer(String name) {
+        return Timer.builder(name).tags(tags).publishPercentileHistogram();
+    }
+
+    private Timer stageTimer(Stage stage, String outcome) {
+        return timer("coinj.stage").tag("stage", stage.name().toLowerCase()).tag("outcome", outcome).register(registry);
+    }
+
+    private DistributionSummary.Builder summary(String name, String unit) {
+        return DistributionSummary.builder(name).tags(tags).baseUnit(unit).publishPercentileHistogram();
+    }
+
+    @Override
+    public void onStage(Stage stage, long nanos, Throwable error) {
+        (error == null ? succeeded : failed).get(stage).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onInputSigned(long nanos) {
+        signInput.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onUnspentOutputs(int count, boolean cached) {
+        (cached ? cachedUnspentOutputs : fetchedUnspentOutputs).record(count);
+    }
+
+    @Override
+    public void onTransactionSigned(int size, int inputs, int outputs) {
+        txSize.record(size);
+        txInputs.record(inputs);
+        txOutputs.record(outputs);
+    }
+
+    // Endpoint urls can carry API keys, only the host is published
+    @Override
+    public void onRequest(String endpoint, long nanos, int status) {
+        requests.computeIfAbsent(endpoint, url -> new ConcurrentHashMap<>())
+                .computeIfAbsent(status, code -> timer("coinj.http.request")
+                        .tag("endpoint", String.valueOf(URI.create(endpoint).getHost()))
+                        .tag("status", code < 0 ? "IO_ERROR" : code.toString())
+                        .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onRetry() {
+        retries.increment();
+    }
+}
@@ -0,0 +1,128 @@
+package io.github.coinj.chains;
+
+import java.math.BigInteger;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Hands out nonces per sending address from memory. The node is only asked for the pending transaction count
+ * the first time an address is used and after a resync. Each address has its own lock, so addresses never wait
+ * on each other.
+ */
+public class NonceManager {
+    private final Function<String, CompletableFuture<BigInteger>> source;
+    private final ConcurrentMap<String, Account> accounts = new ConcurrentHashMap<>();
+
+    /**
+     * @param source fetches the next nonce of an address from the node, normally its pending transaction count
+     */
+    public NonceManager(Function<String, CompletableFuture<BigInteger>> source) {
+        this.source = source;
+    }
+
+    public CompletableFuture<BigInteger> reserve(String address) {
+        return account(address).reserve(address);
+    }
+
+    /**
+     * Returns a reserved nonce that will never be broadcast, so the next reservation fills the gap instead of
+     * leaving later transactions stuck behind it.
+     */
+    public void release(String address, BigInteger nonce) {
+        account(address).release(nonce.longValueExact());
+    }
+
+    /**
+     * Forgets the local state of the address; the next reservation starts again from the node.
+     */
+    public void resync(String address) {
+        account(address).resync();
+    }
+
+    private Account account(String address) {
+        return accounts.computeIfAbsent(address.toLowerCase(), key -> new Account());
+    }
+
+    private class Account {
+        private long next;
+        private final TreeSet<Long> released = new TreeSet<>();
+        private boolean synced;
+        private CompletableFuture<Void> sync;
+        private int generation;
+
+        synchronized CompletableFuture<BigInteger> reserve(String address) {
+            if (synced) {
+                return CompletableFuture.completedFuture(BigInteger.valueOf(take()));
+            }
+            CompletableFuture<Void> pending = sync;
+            if (pending == null) {
+                pending = fetch(address);
+                sync = pending;
+                CompletableFuture<Void> fetch = pending;
+                // May run right away when the fetch failed synchronously, clearing sync again
+                pending.whenComplete((ignored, e) -> {
+                    if (e != null) {
+                        failed(fetch);
+                    }
+                });
+            }
+            // Reserve again once synced, in case a resync raced with the request
+            return pending.thenCompose(ignored -> reserve(address));
+        }
+
+        private CompletableFuture<Void> fetch(String address) {
+            int syncGeneration = generation;
+            try {
+                return source.apply(address).thenAccept(nonce -> synced(syncGeneration, nonce.longValueExact()));
+            } catch (RuntimeException e) {
+                CompletableFuture<Void> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+        }
+
+        private synchronized void synced(int syncGeneration, long nonce) {
+            // A resync while the request was in flight makes its answer stale
+            if (syncGeneration == generation) {
+                next = nonce;
+                released.clear();
+                synced = true;
+            }
+        }
+
+        private synchronized void failed(CompletableFuture<Void> pending) {
+            if (sync == pending) {
+                sync = null;
+            }
+        }
+
+        private long take() {
+            Long lowest = released.pollFirst();
+            return lowest != null ? lowest : next++;
+        }
+
+        synchronized void release(long nonce) {
+            if (!synced || nonce >= next) {
+                return;
+            }
+            if (nonce == next - 1) {
+                next--;
+                while (released.remove(next - 1)) {
+                    next--;
+                }
+            } else {
+                released.add(nonce);
+            }
+        }
+
+        synchronized void resync() {
+            generation++;
+            synced = false;
+            sync = null;
+            released.clear();
+        }
+    }
+}
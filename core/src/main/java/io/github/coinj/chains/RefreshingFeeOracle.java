@@ -0,0 +1,92 @@
+package io.github.coinj.chains;
+
+import com.google.common.base.Preconditions;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.IntFunction;
+
+/**
+ * Keeps the estimates for the confirmation targets asked for in memory, so callers mostly read a local value.
+ * An estimate older than the refresh interval is still returned but fetched again alongside; one older than the
+ * staleness bound is fetched again before returning. Nothing runs in the background, so the oracle lives and dies
+ * with its chain.
+ */
+public class RefreshingFeeOracle<T> implements FeeOracle<T> {
+    public static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofSeconds(30);
+    public static final Duration DEFAULT_MAX_STALENESS = Duration.ofMinutes(2);
+
+    private final IntFunction<CompletableFuture<T>> source;
+    private final long refreshIntervalNanos;
+    private final long maxStalenessNanos;
+    private final ConcurrentMap<Integer, Estimate<T>> estimates = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, CompletableFuture<T>> inFlight = new ConcurrentHashMap<>();
+
+    public RefreshingFeeOracle(IntFunction<CompletableFuture<T>> source) {
+        this(source, DEFAULT_REFRESH_INTERVAL, DEFAULT_MAX_STALENESS);
+    }
+
+    public RefreshingFeeOracle(IntFunction<CompletableFuture<T>> source, Duration refreshInterval, Duration maxStaleness) {
+        Preconditions.checkArgument(!refreshInterval.isNegative() && !refreshInterval.isZero(), "Refresh interval must be positive");
+        Preconditions.checkArgument(maxStaleness.compareTo(refreshInterval) >= 0, "Staleness bound must not be below the refresh interval");
+        this.source = source;
+        this.refreshIntervalNanos = refreshInterval.toNanos();
+        this.maxStalenessNanos = maxStaleness.toNanos();
+    }
+
+    @Override
+    public CompletableFuture<T> getFee(int target) {
+        Estimate<T> estimate = estimates.get(target);
+        if (estimate == null) {
+            return refresh(target);
+        }
+        long age = System.nanoTime() - estimate.fetchedAt;
+        if (age > maxStalenessNanos) {
+            return refresh(target);
+        }
+        if (age > refreshIntervalNanos) {
+            // Failures keep the last estimate, which the staleness bound eventually retires
+            refresh(target);
+        }
+        return CompletableFuture.completedFuture(estimate.value);
+    }
+
+    private CompletableFuture<T> refresh(int target) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        CompletableFuture<T> pending = inFlight.putIfAbsent(target, future);
+        if (pending != null) {
+            return pending;
+        }
+        CompletableFuture<T> fetched;
+        try {
+            fetched = source.apply(target);
+        } catch (RuntimeException e) {
+            fetched = new CompletableFuture<>();
+            fetched.completeExceptionally(e);
+        }
+        fetched.whenComplete((value, e) -> {
+            if (e == null) {
+                estimates.put(target, new Estimate<>(value, System.nanoTime()));
+            }
+            inFlight.remove(target, future);
+            if (e != null) {
+                future.completeExceptionally(e);
+            } else {
+                future.complete(value);
+            }
+        });
+        return future;
+    }
+
+    private static class Estimate<T> {
+        private final T value;
+        private final long fetchedAt;
+
+        Estimate(T value, long fetchedAt) {
+            this.value = value;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+}
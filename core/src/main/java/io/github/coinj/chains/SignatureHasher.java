@@ -0,0 +1,109 @@
+package io.github.coinj.chains;
+
+import org.bitcoinj.core.*;
+
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+import java.util.List;
+
+/**
+ * SIGHASH_ALL digests for every input of one unsigned transaction. The parts shared by all inputs are
+ * serialized once up front: BIP143 digests then cost a constant amount of hashing per input, and legacy
+ * digests are streamed straight into the hash instead of copying and re-parsing the whole transaction.
+ * Instances are immutable and can be used from several threads.
+ */
+class SignatureHasher {
+    private static final byte[] EMPTY_SCRIPT = {0};
+    private static final byte[] SIGHASH_ALL = {(byte) Transaction.SigHash.ALL.value, 0, 0, 0};
+
+    private final byte[] version = new byte[4];
+    private final byte[] lockTime = new byte[4];
+    private final byte[][] outPoints;
+    private final byte[][] sequences;
+    private final byte[] inputCount;
+    private final byte[] outputs;
+
+    private final byte[] hashPrevouts;
+    private final byte[] hashSequence;
+    private final byte[] hashOutputs;
+
+    SignatureHasher(Transaction tx) {
+        Utils.uint32ToByteArrayLE(tx.getVersion(), version, 0);
+        Utils.uint32ToByteArrayLE(tx.getLockTime(), lockTime, 0);
+
+        List<TransactionInput> inputs = tx.getInputs();
+        outPoints = new byte[inputs.size()][];
+        sequences = new byte[inputs.size()][];
+        inputCount = new VarInt(inputs.size()).encode();
+        MessageDigest prevouts = Sha256Hash.newDigest();
+        MessageDigest sequence = Sha256Hash.newDigest();
+        for (int i = 0; i < inputs.size(); i++) {
+            TransactionInput input = inputs.get(i);
+            outPoints[i] = input.getOutpoint().bitcoinSerialize();
+            sequences[i] = new byte[4];
+            Utils.uint32ToByteArrayLE(input.getSequenceNumber(), sequences[i], 0);
+            prevouts.update(outPoints[i]);
+            sequence.update(sequences[i]);
+        }
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (TransactionOutput output : tx.getOutputs()) {
+            byte[] bytes = output.bitcoinSerialize();
+            stream.write(bytes, 0, bytes.length);
+        }
+        byte[] serializedOutputs = stream.toByteArray();
+        byte[] outputCount = new VarInt(tx.getOutputs().size()).encode();
+        outputs = new byte[outputCount.length + serializedOutputs.length];
+        System.arraycopy(outputCount, 0, outputs, 0, outputCount.length);
+        System.arraycopy(serializedOutputs, 0, outputs, outputCount.length, serializedOutputs.length);
+
+        hashPrevouts = Sha256Hash.hash(prevouts.digest());
+        hashSequence = Sha256Hash.hash(sequence.digest());
+        hashOutputs = Sha256Hash.hashTwice(serializedOutputs);
+    }
+
+    /**
+     * The original sighash: the transaction with every script blanked except the one being signed.
+     */
+    Sha256Hash hashForSignature(int index, byte[] scriptCode) {
+        MessageDigest digest = Sha256Hash.newDigest();
+        digest.update(version);
+        digest.update(inputCount);
+        for (int i = 0; i < outPoints.length; i++) {
+            digest.update(outPoints[i]);
+            if (i == index) {
+                digest.update(new VarInt(scriptCode.length).encode());
+                digest.update(scriptCode);
+            } else {
+                digest.update(EMPTY_SCRIPT);
+            }
+            digest.update(sequences[i]);
+        }
+        digest.update(outputs);
+        digest.update(lockTime);
+        digest.update(SIGHASH_ALL);
+        return Sha256Hash.wrap(Sha256Hash.hash(digest.digest()));
+    }
+
+    /**
+     * The BIP143 sighash used by segwit inputs.
+     */
+    Sha256Hash hashForWitnessSignature(int index, byte[] scriptCode, Coin value) {
+        byte[] amount = new byte[8];
+        Utils.int64ToByteArrayLE(value.getValue(), amount, 0);
+
+        MessageDigest digest = Sha256Hash.newDigest();
+        digest.update(version);
+        digest.update(hashPrevouts);
+        digest.update(hashSequence);
+        digest.update(outPoints[index]);
+        digest.update(new VarInt(scriptCode.length).encode());
+        digest.update(scriptCode);
+        digest.update(amount);
+        digest.update(sequences[index]);
+        digest.update(hashOutputs);
+        digest.update(lockTime);
+        digest.update(SIGHASH_ALL);
+        return Sha256Hash.wrap(Sha256Hash.hash(digest.digest()));
+    }
+}
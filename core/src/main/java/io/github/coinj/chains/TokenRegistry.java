@@ -0,0 +1,113 @@
+package io.github.coinj.chains;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * ERC20 tokens by contract address. The metadata of an unknown token is loaded once through the source and then
+ * served from memory; a failed load is forgotten so the next lookup tries again.
+ */
+public class TokenRegistry {
+    private final Function<String, CompletableFuture<Token>> source;
+    private final ConcurrentMap<String, CompletableFuture<Token>> tokens = new ConcurrentHashMap<>();
+
+    /**
+     * @param source loads the token at a contract address, normally through {@code decimals()} and {@code symbol()}
+     */
+    public TokenRegistry(Function<String, CompletableFuture<Token>> source) {
+        this.source = source;
+    }
+
+    public CompletableFuture<Token> get(String contract) {
+        String key = contract.toLowerCase(Locale.ROOT);
+        CompletableFuture<Token> token = tokens.get(key);
+        if (token != null) {
+            return token;
+        }
+        CompletableFuture<Token> loading = new CompletableFuture<>();
+        token = tokens.putIfAbsent(key, loading);
+        if (token != null) {
+            return token;
+        }
+        CompletableFuture<Token> loaded;
+        try {
+            loaded = source.apply(contract);
+        } catch (RuntimeException e) {
+            loaded = new CompletableFuture<>();
+            loaded.completeExceptionally(e);
+        }
+        loaded.whenComplete((value, e) -> {
+            if (e != null) {
+                tokens.remove(key, loading);
+                loading.completeExceptionally(e);
+            } else {
+                loading.complete(value);
+            }
+        });
+        return loading;
+    }
+
+    public void register(Token token) {
+        tokens.put(token.getContract().toLowerCase(Locale.ROOT), CompletableFuture.completedFuture(token));
+    }
+
+    /**
+     * Decodes a {@code symbol()} result, which is an ABI string for most tokens and a bytes32 for some older ones.
+     */
+    static String decodeSymbol(byte[] result) {
+        if (result.length == AbiEncoder.WORD) {
+            int length = 0;
+            while (length < result.length && result[length] != 0) {
+                length++;
+            }
+            return new String(result, 0, length, StandardCharsets.UTF_8);
+        }
+        if (result.length < 2 * AbiEncoder.WORD) {
+            return "";
+        }
+        int offset = readInt(result, 0);
+        int length = readInt(result, offset);
+        return new String(result, offset + AbiEncoder.WORD, length, StandardCharsets.UTF_8);
+    }
+
+    static int readInt(byte[] result, int word) {
+        int value = 0;
+        for (int i = word + AbiEncoder.WORD - 4; i < word + AbiEncoder.WORD; i++) {
+            value = value << 8 | (result[i] & 0xff);
+        }
+        return value;
+    }
+
+    public static class Token {
+        private final String contract;
+        private final String symbol;
+        private final int decimals;
+
+        public Token(String contract, String symbol, int decimals) {
+            this.contract = contract;
+            this.symbol = symbol;
+            this.decimals = decimals;
+        }
+
+        public String getContract() {
+            return contract;
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+
+        public int getDecimals() {
+            return decimals;
+        }
+
+        @Override
+        public String toString() {
+            return symbol + "(" + contract + ")";
+        }
+    }
+}
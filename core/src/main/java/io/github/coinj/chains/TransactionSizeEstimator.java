@@ -0,0 +1,145 @@
+package io.github.coinj.chains;
+
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.VarInt;
+import org.bitcoinj.script.Script;
+
+/**
+ * Transaction sizes worked out from script types alone, without building or serializing the transaction.
+ * Signatures are assumed to take their maximal 72 bytes, so estimates never fall short of the real size.
+ * Sizes are in bytes and weights in weight units; the virtual size is the weight divided by four, rounded up.
+ */
+public final class TransactionSizeEstimator {
+    private static final int WITNESS_SCALE_FACTOR = 4;
+
+    // outpoint + sequence
+    private static final int INPUT_BASE_SIZE = 36 + 4;
+    private static final int SIGNATURE_PUSH_SIZE = 1 + 72;
+    private static final int PUBKEY_PUSH_SIZE = 1 + 33;
+    // witness item count, signature, public key
+    private static final int P2WPKH_WITNESS_SIZE = 1 + SIGNATURE_PUSH_SIZE + PUBKEY_PUSH_SIZE;
+    // push of OP_0 <20 bytes>
+    private static final int P2SH_P2WPKH_SCRIPT_SIG_SIZE = 1 + 22;
+
+    private TransactionSizeEstimator() {
+    }
+
+    /**
+     * Classifies a scriptPubKey from its hex form; P2SH is assumed to wrap P2WPKH, the only kind this library signs.
+     */
+    public static Script.ScriptType scriptType(String scriptHex) {
+        int length = scriptHex.length();
+        if (length == 50 && scriptHex.startsWith("76a914") && scriptHex.endsWith("88ac")) {
+            return Script.ScriptType.P2PKH;
+        }
+        if (length == 44 && scriptHex.startsWith("0014")) {
+            return Script.ScriptType.P2WPKH;
+        }
+        if (length == 46 && scriptHex.startsWith("a914") && scriptHex.endsWith("87")) {
+            return Script.ScriptType.P2SH;
+        }
+        if (length == 68 && scriptHex.startsWith("0020")) {
+            return Script.ScriptType.P2WSH;
+        }
+        if ((length == 70 && scriptHex.startsWith("21") || length == 134 && scriptHex.startsWith("41")) && scriptHex.endsWith("ac")) {
+            return Script.ScriptType.P2PK;
+        }
+        return null;
+    }
+
+    /**
+     * Classifies a scriptPubKey from its bytes, like {@link #scriptType(String)}.
+     */
+    public static Script.ScriptType scriptType(byte[] script, int offset, int length) {
+        if (length == 0) {
+            return null;
+        }
+        int first = script[offset] & 0xff;
+        int second = length > 1 ? script[offset + 1] & 0xff : -1;
+        int last = script[offset + length - 1] & 0xff;
+        if (length == 25 && first == 0x76 && second == 0xa9 && script[offset + 2] == 0x14 && (script[offset + 23] & 0xff) == 0x88 && last == 0xac) {
+            return Script.ScriptType.P2PKH;
+        }
+        if (length == 22 && first == 0x00 && second == 0x14) {
+            return Script.ScriptType.P2WPKH;
+        }
+        if (length == 23 && first == 0xa9 && second == 0x14 && last == 0x87) {
+            return Script.ScriptType.P2SH;
+        }
+        if (length == 34 && first == 0x00 && second == 0x20) {
+            return Script.ScriptType.P2WSH;
+        }
+        if ((length == 35 && first == 0x21 || length == 67 && first == 0x41) && last == 0xac) {
+            return Script.ScriptType.P2PK;
+        }
+        return null;
+    }
+
+    public static boolean isSegwit(Script.ScriptType type) {
+        return type == Script.ScriptType.P2WPKH || type == Script.ScriptType.P2SH || type == Script.ScriptType.P2WSH;
+    }
+
+    public static int inputWeight(Script.ScriptType type) {
+        if (type == null) {
+            type = Script.ScriptType.P2PKH;
+        }
+        switch (type) {
+            case P2PK:
+                return base(INPUT_BASE_SIZE + 1 + SIGNATURE_PUSH_SIZE);
+            case P2WPKH:
+                return base(INPUT_BASE_SIZE + 1) + P2WPKH_WITNESS_SIZE;
+            case P2SH:
+                return base(INPUT_BASE_SIZE + 1 + P2SH_P2WPKH_SCRIPT_SIG_SIZE) + P2WPKH_WITNESS_SIZE;
+            case P2WSH:
+                throw new IllegalArgumentException("Unsupported input type " + type);
+            default:
+                return base(INPUT_BASE_SIZE + 1 + SIGNATURE_PUSH_SIZE + PUBKEY_PUSH_SIZE);
+        }
+    }
+
+    public static int inputVsize(Script.ScriptType type) {
+        return vsize(inputWeight(type));
+    }
+
+    public static int outputSize(Script.ScriptType type) {
+        int scriptSize;
+        switch (type) {
+            case P2PK:
+                scriptSize = 35;
+                break;
+            case P2SH:
+                scriptSize = 23;
+                break;
+            case P2WPKH:
+                scriptSize = 22;
+                break;
+            case P2WSH:
+                scriptSize = 34;
+                break;
+            default:
+                scriptSize = 25;
+                break;
+        }
+        // value + script length + script
+        return 8 + 1 + scriptSize;
+    }
+
+    public static int outputSize(Address address) {
+        return outputSize(address.getOutputScriptType());
+    }
+
+    /**
+     * Version, locktime, both counts and, for segwit, the marker and flag bytes.
+     */
+    public static int overheadWeight(int inputCount, int outputCount, boolean segwit) {
+        return base(4 + 4 + VarInt.sizeOf(inputCount) + VarInt.sizeOf(outputCount)) + (segwit ? 2 : 0);
+    }
+
+    public static int vsize(int weight) {
+        return (weight + WITNESS_SCALE_FACTOR - 1) / WITNESS_SCALE_FACTOR;
+    }
+
+    private static int base(int size) {
+        return size * WITNESS_SCALE_FACTOR;
+    }
+}
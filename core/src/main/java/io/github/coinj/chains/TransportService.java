@@ -0,0 +1,59 @@
+package io.github.coinj.chains;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import org.web3j.protocol.Service;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs web3j JSON-RPC calls over an {@link HttpTransport}, so they get its deadlines, retries and failover.
+ */
+class TransportService extends Service {
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    private final HttpTransport transport;
+
+    TransportService(HttpTransport transport) {
+        super(false);
+        this.transport = transport;
+    }
+
+    @Override
+    protected InputStream performIO(String payload) throws IOException {
+        String reply = AbstractChain.await(transport.post("", RequestBody.create(payload, JSON)));
+        return new ByteArrayInputStream(reply.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(Request request, Class<T> responseType) {
+        String payload;
+        try {
+            payload = objectMapper.writeValueAsString(request);
+        } catch (JsonProcessingException e) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        return transport.post("", RequestBody.create(payload, JSON)).thenApply(reply -> {
+            try {
+                return objectMapper.readValue(reply, responseType);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        // The transport belongs to the chain
+    }
+}
@@ -1,6 +1,7 @@
 package io.github.coinj.chains;
 
 import com.google.gson.annotations.SerializedName;
+import org.bitcoinj.script.Script;
 
 public class UnspentOutput {
     @SerializedName("mintTxid")
@@ -9,9 +10,9 @@ public class UnspentOutput {
     private int index;
     private String address;
     private String script;
-    private Long value;
+    private long value;
 
-    public UnspentOutput(String txId, int index, String address, String script, Long value) {
+    public UnspentOutput(String txId, int index, String address, String script, long value) {
         this.txId = txId;
         this.index = index;
         this.address = address;
@@ -51,11 +52,18 @@ public class UnspentOutput {
         this.script = script;
     }
 
-    public Long getValue() {
+    /**
+     * The type of the script, or null if it is not a standard one. P2SH is assumed to wrap P2WPKH.
+     */
+    public Script.ScriptType getScriptType() {
+        return script == null ? null : TransactionSizeEstimator.scriptType(script);
+    }
+
+    public long getValue() {
         return value;
     }
 
-    public void setValue(Long value) {
+    public void setValue(long value) {
         this.value = value;
     }
 }
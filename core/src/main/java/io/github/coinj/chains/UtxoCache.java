@@ -0,0 +1,32 @@
+package io.github.coinj.chains;
+
+import java.util.List;
+
+public interface UtxoCache {
+    /**
+     * Returns the cached unspent outputs of the address, or null when it has to be fetched from the backend.
+     */
+    List<UnspentOutput> get(String address);
+
+    void put(String address, List<UnspentOutput> unspentOutputs);
+
+    /**
+     * Returns a number that {@link #update} and {@link #invalidate} move on for the address. A fetch reads it before
+     * it starts and hands it to {@link #put(String, List, long)}.
+     */
+    long getVersion(String address);
+
+    /**
+     * Stores fetched outputs unless the address was updated or invalidated after {@code version} was read, in which
+     * case they may include outputs spent since.
+     */
+    void put(String address, List<UnspentOutput> unspentOutputs, long version);
+
+    void invalidate(String address);
+
+    /**
+     * Applies a broadcast transaction: removes the outpoints it spent and records the outputs it created
+     * for addresses that are already cached.
+     */
+    void update(List<UnspentOutput> spent, List<UnspentOutput> created);
+}
@@ -0,0 +1,244 @@
+package io.github.coinj.chains;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.script.Script;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.AbstractList;
+import java.util.Arrays;
+
+/**
+ * Immutable list of unspent outputs stored column by column in primitive arrays: transaction ids and scripts as
+ * bytes, indexes and values as ints and longs. Elements are views created on access and only hex encode what is
+ * read from them, so a set of several hundred thousand outputs costs a few tens of bytes per output. Script types
+ * are classified once while building, so sizing inputs for coin selection encodes nothing.
+ */
+public class UtxoSet extends AbstractList<UnspentOutput> {
+    private static final int TX_ID_SIZE = 32;
+
+    private final int size;
+    private final byte[] txIds;
+    private final int[] indexes;
+    private final long[] values;
+    private final String[] addresses;
+    private final byte[] scripts;
+    private final int[] scriptOffsets;
+    private final Script.ScriptType[] scriptTypes;
+
+    private UtxoSet(Builder builder) {
+        this.size = builder.size;
+        this.txIds = Arrays.copyOf(builder.txIds, size * TX_ID_SIZE);
+        this.indexes = Arrays.copyOf(builder.indexes, size);
+        this.values = Arrays.copyOf(builder.values, size);
+        this.addresses = Arrays.copyOf(builder.addresses, size);
+        this.scripts = Arrays.copyOf(builder.scripts, builder.scriptsSize);
+        this.scriptOffsets = Arrays.copyOf(builder.scriptOffsets, size + 1);
+        this.scriptTypes = Arrays.copyOf(builder.scriptTypes, size);
+    }
+
+    /**
+     * Reads a JSON array of outputs as answered by bitcore's {@code /address/<address>?unspent=true}, one output at a
+     * time, without holding the document in memory.
+     */
+    public static UtxoSet parse(Reader reader) throws IOException {
+        JsonReader json = new JsonReader(reader);
+        Builder builder = new Builder();
+        json.beginArray();
+        while (json.hasNext()) {
+            String txId = null;
+            int index = 0;
+            String address = null;
+            String script = null;
+            long value = 0;
+            json.beginObject();
+            while (json.hasNext()) {
+                String name = json.nextName();
+                if (json.peek() == JsonToken.NULL) {
+                    json.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "mintTxid":
+                        txId = json.nextString();
+                        break;
+                    case "mintIndex":
+                        index = json.nextInt();
+                        break;
+                    case "address":
+                        address = json.nextString();
+                        break;
+                    case "script":
+                        script = json.nextString();
+                        break;
+                    case "value":
+                        value = json.nextLong();
+                        break;
+                    default:
+                        json.skipValue();
+                }
+            }
+            json.endObject();
+            if (txId == null || script == null) {
+                throw new IOException("Unspent output without transaction id or script");
+            }
+            builder.add(txId, index, address, script, value);
+        }
+        json.endArray();
+        return builder.build();
+    }
+
+    @Override
+    public UnspentOutput get(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+        return new Entry(i);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public long getValue(int i) {
+        return values[i];
+    }
+
+    public long totalValue() {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total = Math.addExact(total, values[i]);
+        }
+        return total;
+    }
+
+    private class Entry extends UnspentOutput {
+        private final int i;
+
+        Entry(int i) {
+            super(null, indexes[i], addresses[i], null, values[i]);
+            this.i = i;
+        }
+
+        @Override
+        public String getTxId() {
+            return Utils.HEX.encode(Arrays.copyOfRange(txIds, i * TX_ID_SIZE, (i + 1) * TX_ID_SIZE));
+        }
+
+        @Override
+        public String getScript() {
+            return Utils.HEX.encode(Arrays.copyOfRange(scripts, scriptOffsets[i], scriptOffsets[i + 1]));
+        }
+
+        @Override
+        public Script.ScriptType getScriptType() {
+            return scriptTypes[i];
+        }
+
+        @Override
+        public void setTxId(String txId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setIndex(int index) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setAddress(String address) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setScript(String script) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setValue(long value) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    public static class Builder {
+        private int size;
+        private byte[] txIds = new byte[16 * TX_ID_SIZE];
+        private int[] indexes = new int[16];
+        private long[] values = new long[16];
+        private String[] addresses = new String[16];
+        private byte[] scripts = new byte[16 * 25];
+        private int scriptsSize;
+        private int[] scriptOffsets = new int[17];
+        private Script.ScriptType[] scriptTypes = new Script.ScriptType[16];
+
+        public Builder add(String txId, int index, String address, String script, long value) {
+            if (txId.length() != 2 * TX_ID_SIZE) {
+                throw new IllegalArgumentException("Invalid transaction id " + txId);
+            }
+            int scriptSize = script.length() / 2;
+            grow(scriptSize);
+            decodeHex(txId, txIds, size * TX_ID_SIZE);
+            decodeHex(script, scripts, scriptsSize);
+            return append(index, address, value, scriptSize);
+        }
+
+        public Builder add(byte[] txId, int index, String address, byte[] script, long value) {
+            if (txId.length != TX_ID_SIZE) {
+                throw new IllegalArgumentException("Invalid transaction id length " + txId.length);
+            }
+            grow(script.length);
+            System.arraycopy(txId, 0, txIds, size * TX_ID_SIZE, TX_ID_SIZE);
+            System.arraycopy(script, 0, scripts, scriptsSize, script.length);
+            return append(index, address, value, script.length);
+        }
+
+        private void grow(int scriptSize) {
+            if (size == indexes.length) {
+                int capacity = size * 2;
+                txIds = Arrays.copyOf(txIds, capacity * TX_ID_SIZE);
+                indexes = Arrays.copyOf(indexes, capacity);
+                values = Arrays.copyOf(values, capacity);
+                addresses = Arrays.copyOf(addresses, capacity);
+                scriptOffsets = Arrays.copyOf(scriptOffsets, capacity + 1);
+                scriptTypes = Arrays.copyOf(scriptTypes, capacity);
+            }
+            if (scriptsSize + scriptSize > scripts.length) {
+                scripts = Arrays.copyOf(scripts, Math.max(scripts.length * 2, scriptsSize + scriptSize));
+            }
+        }
+
+        private Builder append(int index, String address, long value, int scriptSize) {
+            indexes[size] = index;
+            values[size] = value;
+            // Outputs of one address share a single string
+            addresses[size] = size > 0 && address != null && address.equals(addresses[size - 1]) ? addresses[size - 1] : address;
+            scriptTypes[size] = TransactionSizeEstimator.scriptType(scripts, scriptsSize, scriptSize);
+            scriptsSize += scriptSize;
+            size++;
+            scriptOffsets[size] = scriptsSize;
+            return this;
+        }
+
+        public UtxoSet build() {
+            return new UtxoSet(this);
+        }
+
+        private static void decodeHex(String hex, byte[] target, int offset) {
+            if (hex.length() % 2 != 0) {
+                throw new IllegalArgumentException("Odd length hex " + hex);
+            }
+            for (int i = 0; i < hex.length(); i += 2) {
+                int high = Character.digit(hex.charAt(i), 16);
+                int low = Character.digit(hex.charAt(i + 1), 16);
+                if (high < 0 || low < 0) {
+                    throw new IllegalArgumentException("Invalid hex " + hex);
+                }
+                target[offset + i / 2] = (byte) (high << 4 | low);
+            }
+        }
+    }
+}
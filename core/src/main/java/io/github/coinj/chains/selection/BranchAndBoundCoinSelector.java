@@ -0,0 +1,103 @@
+package io.github.coinj.chains.selection;
+
+import io.github.coinj.chains.UnspentOutput;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Depth-first search for an input set that needs no change output, as in Bitcoin Core: the effective value
+ * has to land between the target and the target plus the cost of change, and the least wasteful set wins.
+ */
+public class BranchAndBoundCoinSelector implements CoinSelector {
+    public static final int DEFAULT_MAX_TRIES = 100_000;
+
+    private final int maxTries;
+
+    public BranchAndBoundCoinSelector() {
+        this(DEFAULT_MAX_TRIES);
+    }
+
+    public BranchAndBoundCoinSelector(int maxTries) {
+        this.maxTries = maxTries;
+    }
+
+    @Override
+    public CoinSelection select(List<UnspentOutput> unspentOutputs, CoinSelectionParams params) {
+        List<UnspentOutput> pool = params.spendable(unspentOutputs);
+        pool.sort(Comparator.comparingLong(params::effectiveValue).reversed());
+        int size = pool.size();
+        long[] values = new long[size];
+        long[] wastes = new long[size];
+        long available = 0;
+        for (int i = 0; i < size; i++) {
+            values[i] = params.effectiveValue(pool.get(i));
+            wastes[i] = params.inputWaste(pool.get(i));
+            available += values[i];
+        }
+
+        long target = params.getSelectionTarget();
+        long upperBound = target + params.getCostOfChange();
+        if (available < target) {
+            return null;
+        }
+        // While fees are above the long-term rate every extra input adds waste, so wasteful branches can be cut
+        boolean pruneOnWaste = params.getFeeRate() > params.getLongTermFeeRate();
+
+        boolean[] included = new boolean[size];
+        boolean[] best = null;
+        long bestWaste = Long.MAX_VALUE;
+        long value = 0;
+        long waste = 0;
+        int depth = 0;
+        for (int tries = 0; tries < maxTries; tries++) {
+            boolean backtrack = false;
+            if (value + available < target || value > upperBound || (pruneOnWaste && waste > bestWaste)) {
+                backtrack = true;
+            } else if (value >= target) {
+                long totalWaste = waste + value - target;
+                if (totalWaste <= bestWaste) {
+                    best = included.clone();
+                    for (int i = depth; i < size; i++) {
+                        best[i] = false;
+                    }
+                    bestWaste = totalWaste;
+                }
+                backtrack = true;
+            } else if (depth == size) {
+                backtrack = true;
+            }
+
+            if (backtrack) {
+                while (depth > 0 && !included[depth - 1]) {
+                    depth--;
+                    available += values[depth];
+                }
+                if (depth == 0) {
+                    break;
+                }
+                // Try the branch that leaves the last included output out
+                included[depth - 1] = false;
+                value -= values[depth - 1];
+                waste -= wastes[depth - 1];
+            } else {
+                available -= values[depth];
+                included[depth] = true;
+                value += values[depth];
+                waste += wastes[depth];
+                depth++;
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+        List<UnspentOutput> selected = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (best[i]) {
+                selected.add(pool.get(i));
+            }
+        }
+        return params.complete(selected);
+    }
+}
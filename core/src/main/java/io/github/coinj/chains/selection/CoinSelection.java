@@ -0,0 +1,50 @@
+package io.github.coinj.chains.selection;
+
+import io.github.coinj.chains.UnspentOutput;
+
+import java.util.List;
+
+public class CoinSelection {
+    private final List<UnspentOutput> selected;
+    private final long selectedValue;
+    private final long fee;
+    private final long change;
+    private final long waste;
+
+    public CoinSelection(List<UnspentOutput> selected, long selectedValue, long fee, long change, long waste) {
+        this.selected = selected;
+        this.selectedValue = selectedValue;
+        this.fee = fee;
+        this.change = change;
+        this.waste = waste;
+    }
+
+    public List<UnspentOutput> getSelected() {
+        return selected;
+    }
+
+    public long getSelectedValue() {
+        return selectedValue;
+    }
+
+    public long getFee() {
+        return fee;
+    }
+
+    public long getChange() {
+        return change;
+    }
+
+    public boolean hasChange() {
+        return change > 0;
+    }
+
+    public long getWaste() {
+        return waste;
+    }
+
+    @Override
+    public String toString() {
+        return "CoinSelection{inputs=" + selected.size() + ", value=" + selectedValue + ", fee=" + fee + ", change=" + change + ", waste=" + waste + "}";
+    }
+}
@@ -0,0 +1,192 @@
+package io.github.coinj.chains.selection;
+
+import com.google.common.base.Preconditions;
+import io.github.coinj.chains.UnspentOutput;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * Amounts are in satoshis, sizes in virtual bytes and fee rates in satoshis per virtual byte.
+ */
+public class CoinSelectionParams {
+    private final long target;
+    private final long fixedFee;
+    private final double feeRate;
+    private final double longTermFeeRate;
+    private final int baseSize;
+    private final int changeOutputSize;
+    private final int changeSpendSize;
+    private final long dustThreshold;
+    private final ToIntFunction<UnspentOutput> inputSize;
+
+    private CoinSelectionParams(Builder builder) {
+        this.target = builder.target;
+        this.fixedFee = builder.fixedFee;
+        this.feeRate = builder.feeRate;
+        this.longTermFeeRate = builder.longTermFeeRate;
+        this.baseSize = builder.baseSize;
+        this.changeOutputSize = builder.changeOutputSize;
+        this.changeSpendSize = builder.changeSpendSize;
+        this.dustThreshold = builder.dustThreshold;
+        this.inputSize = builder.inputSize;
+    }
+
+    public long getTarget() {
+        return target;
+    }
+
+    public long getFixedFee() {
+        return fixedFee;
+    }
+
+    public double getFeeRate() {
+        return feeRate;
+    }
+
+    public double getLongTermFeeRate() {
+        return longTermFeeRate;
+    }
+
+    public long getDustThreshold() {
+        return dustThreshold;
+    }
+
+    private static long fee(double feeRate, long size) {
+        return (long) Math.ceil(feeRate * size);
+    }
+
+    public long inputFee(UnspentOutput output) {
+        return fee(feeRate, inputSize.applyAsInt(output));
+    }
+
+    public long effectiveValue(UnspentOutput output) {
+        return output.getValue() - inputFee(output);
+    }
+
+    /**
+     * What spending the output now costs over spending it at the long-term fee rate.
+     */
+    public long inputWaste(UnspentOutput output) {
+        int size = inputSize.applyAsInt(output);
+        return fee(feeRate, size) - fee(longTermFeeRate, size);
+    }
+
+    /**
+     * The effective value the selected inputs have to add up to for a transaction without change.
+     */
+    public long getSelectionTarget() {
+        return target + fixedFee + fee(feeRate, baseSize);
+    }
+
+    public long getCostOfChange() {
+        return fee(feeRate, changeOutputSize) + fee(longTermFeeRate, changeSpendSize);
+    }
+
+    public long getMinChange() {
+        return fee(feeRate, changeOutputSize) + dustThreshold;
+    }
+
+    public List<UnspentOutput> spendable(List<UnspentOutput> unspentOutputs) {
+        List<UnspentOutput> spendable = new ArrayList<>(unspentOutputs.size());
+        for (UnspentOutput output : unspentOutputs) {
+            if (effectiveValue(output) > 0) {
+                spendable.add(output);
+            }
+        }
+        return spendable;
+    }
+
+    /**
+     * Prices a chosen set of inputs. A change output is only added when it is worth more than dust,
+     * otherwise the excess goes to the fee. Returns null if the inputs do not cover the target.
+     */
+    public CoinSelection complete(List<UnspentOutput> selected) {
+        long selectedValue = 0;
+        long size = baseSize;
+        long waste = 0;
+        for (UnspentOutput output : selected) {
+            selectedValue += output.getValue();
+            size += inputSize.applyAsInt(output);
+            waste += inputWaste(output);
+        }
+        long fee = fixedFee + fee(feeRate, size);
+        long excess = selectedValue - target - fee;
+        if (excess < 0) {
+            return null;
+        }
+        long feeWithChange = fixedFee + fee(feeRate, size + changeOutputSize);
+        long change = selectedValue - target - feeWithChange;
+        if (change >= dustThreshold) {
+            return new CoinSelection(selected, selectedValue, feeWithChange, change, waste + getCostOfChange());
+        }
+        return new CoinSelection(selected, selectedValue, fee + excess, 0, waste + excess);
+    }
+
+    public static class Builder {
+        private long target;
+        private long fixedFee;
+        private double feeRate;
+        private double longTermFeeRate = -1;
+        private int baseSize;
+        private int changeOutputSize;
+        private int changeSpendSize;
+        private long dustThreshold;
+        private ToIntFunction<UnspentOutput> inputSize;
+
+        public Builder target(long target) {
+            this.target = target;
+            return this;
+        }
+
+        public Builder fixedFee(long fixedFee) {
+            this.fixedFee = fixedFee;
+            return this;
+        }
+
+        public Builder feeRate(double feeRate) {
+            this.feeRate = feeRate;
+            return this;
+        }
+
+        public Builder longTermFeeRate(double longTermFeeRate) {
+            this.longTermFeeRate = longTermFeeRate;
+            return this;
+        }
+
+        public Builder baseSize(int baseSize) {
+            this.baseSize = baseSize;
+            return this;
+        }
+
+        public Builder changeOutputSize(int changeOutputSize) {
+            this.changeOutputSize = changeOutputSize;
+            return this;
+        }
+
+        public Builder changeSpendSize(int changeSpendSize) {
+            this.changeSpendSize = changeSpendSize;
+            return this;
+        }
+
+        public Builder dustThreshold(long dustThreshold) {
+            this.dustThreshold = dustThreshold;
+            return this;
+        }
+
+        public Builder inputSize(ToIntFunction<UnspentOutput> inputSize) {
+            this.inputSize = inputSize;
+            return this;
+        }
+
+        public CoinSelectionParams build() {
+            Preconditions.checkNotNull(inputSize, "Input size is required");
+            Preconditions.checkArgument(target >= 0 && fixedFee >= 0 && feeRate >= 0, "Negative amount");
+            if (longTermFeeRate < 0) {
+                longTermFeeRate = feeRate;
+            }
+            return new CoinSelectionParams(this);
+        }
+    }
+}
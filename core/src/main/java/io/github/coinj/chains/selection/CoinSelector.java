@@ -0,0 +1,16 @@
+package io.github.coinj.chains.selection;
+
+import io.github.coinj.chains.UnspentOutput;
+
+import java.util.List;
+
+public interface CoinSelector {
+    /**
+     * Picks the outputs to spend, or returns null when this strategy finds no subset that covers the target.
+     */
+    CoinSelection select(List<UnspentOutput> unspentOutputs, CoinSelectionParams params);
+
+    static CoinSelector defaultSelector() {
+        return new FallbackCoinSelector(new BranchAndBoundCoinSelector(), new KnapsackCoinSelector());
+    }
+}
@@ -0,0 +1,24 @@
+package io.github.coinj.chains.selection;
+
+import io.github.coinj.chains.UnspentOutput;
+
+import java.util.List;
+
+public class FallbackCoinSelector implements CoinSelector {
+    private final CoinSelector[] selectors;
+
+    public FallbackCoinSelector(CoinSelector... selectors) {
+        this.selectors = selectors;
+    }
+
+    @Override
+    public CoinSelection select(List<UnspentOutput> unspentOutputs, CoinSelectionParams params) {
+        for (CoinSelector selector : selectors) {
+            CoinSelection selection = selector.select(unspentOutputs, params);
+            if (selection != null) {
+                return selection;
+            }
+        }
+        return null;
+    }
+}
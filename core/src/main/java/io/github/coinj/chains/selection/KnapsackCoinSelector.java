@@ -0,0 +1,118 @@
+package io.github.coinj.chains.selection;
+
+import io.github.coinj.chains.UnspentOutput;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Bitcoin Core's stochastic approximation: random subsets of the outputs smaller than the target are tried
+ * and the smallest sum that covers it is kept, unless a single larger output comes closer.
+ */
+public class KnapsackCoinSelector implements CoinSelector {
+    public static final int DEFAULT_ITERATIONS = 1000;
+
+    private final int iterations;
+    private final Random random;
+
+    public KnapsackCoinSelector() {
+        this(DEFAULT_ITERATIONS, new Random());
+    }
+
+    public KnapsackCoinSelector(int iterations, Random random) {
+        this.iterations = iterations;
+        this.random = random;
+    }
+
+    @Override
+    public CoinSelection select(List<UnspentOutput> unspentOutputs, CoinSelectionParams params) {
+        long target = params.getSelectionTarget();
+        long targetWithChange = target + params.getMinChange();
+
+        UnspentOutput lowestLarger = null;
+        long lowestLargerValue = Long.MAX_VALUE;
+        List<UnspentOutput> smaller = new ArrayList<>();
+        long smallerTotal = 0;
+        for (UnspentOutput output : params.spendable(unspentOutputs)) {
+            long value = params.effectiveValue(output);
+            if (value == target) {
+                return params.complete(singletonList(output));
+            } else if (value < targetWithChange) {
+                smaller.add(output);
+                smallerTotal += value;
+            } else if (value < lowestLargerValue) {
+                lowestLarger = output;
+                lowestLargerValue = value;
+            }
+        }
+
+        if (smallerTotal == target) {
+            return params.complete(smaller);
+        }
+        if (smallerTotal < target) {
+            return lowestLarger == null ? null : params.complete(singletonList(lowestLarger));
+        }
+
+        smaller.sort(Comparator.comparingLong(params::effectiveValue).reversed());
+        long[] values = new long[smaller.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = params.effectiveValue(smaller.get(i));
+        }
+        boolean[] best = new boolean[values.length];
+        long bestValue = approximateBestSubset(values, smallerTotal, target, best);
+        if (bestValue != target && smallerTotal >= targetWithChange) {
+            bestValue = approximateBestSubset(values, smallerTotal, targetWithChange, best);
+        }
+
+        // A single larger output wins if the subset has neither an exact match nor room for change
+        if (lowestLarger != null && ((bestValue != target && bestValue < targetWithChange) || lowestLargerValue <= bestValue)) {
+            return params.complete(singletonList(lowestLarger));
+        }
+        List<UnspentOutput> selected = new ArrayList<>();
+        for (int i = 0; i < values.length; i++) {
+            if (best[i]) {
+                selected.add(smaller.get(i));
+            }
+        }
+        return params.complete(selected);
+    }
+
+    private long approximateBestSubset(long[] values, long total, long target, boolean[] best) {
+        Arrays.fill(best, true);
+        long bestValue = total;
+        boolean[] included = new boolean[values.length];
+        for (int rep = 0; rep < iterations && bestValue != target; rep++) {
+            Arrays.fill(included, false);
+            long value = 0;
+            boolean reachedTarget = false;
+            for (int pass = 0; pass < 2 && !reachedTarget; pass++) {
+                for (int i = 0; i < values.length; i++) {
+                    // The first pass picks at random, the second fills up with everything left out
+                    if (pass == 0 ? random.nextBoolean() : !included[i]) {
+                        value += values[i];
+                        included[i] = true;
+                        if (value >= target) {
+                            reachedTarget = true;
+                            if (value < bestValue) {
+                                bestValue = value;
+                                System.arraycopy(included, 0, best, 0, values.length);
+                            }
+                            value -= values[i];
+                            included[i] = false;
+                        }
+                    }
+                }
+            }
+        }
+        return bestValue;
+    }
+
+    private static List<UnspentOutput> singletonList(UnspentOutput output) {
+        List<UnspentOutput> list = new ArrayList<>(1);
+        list.add(output);
+        return list;
+    }
+}
@@ -0,0 +1,27 @@
+package io.github.coinj.chains.selection;
+
+import io.github.coinj.chains.UnspentOutput;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+public class LargestFirstCoinSelector implements CoinSelector {
+    @Override
+    public CoinSelection select(List<UnspentOutput> unspentOutputs, CoinSelectionParams params) {
+        List<UnspentOutput> candidates = params.spendable(unspentOutputs);
+        candidates.sort(Comparator.comparingLong(params::effectiveValue).reversed());
+
+        long target = params.getSelectionTarget();
+        long selectedValue = 0;
+        List<UnspentOutput> selected = new ArrayList<>();
+        for (UnspentOutput output : candidates) {
+            selected.add(output);
+            selectedValue += params.effectiveValue(output);
+            if (selectedValue >= target) {
+                return params.complete(selected);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,143 @@
+package io.github.coinj;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AmountTest {
+    private static final BigInteger TWO_256 = BigInteger.ONE.shiftLeft(256);
+
+    @Test
+    public void upscaleStaysInLongUpToItsLimit() {
+        Amount amount = Amount.ofUnits(Long.MAX_VALUE / 10, 0).withDecimals(1);
+        assertTrue(amount.fitsInLong());
+        assertEquals(Long.MAX_VALUE / 10 * 10, amount.longUnits());
+    }
+
+    @Test
+    public void upscalePastLongFallsBackToBigInteger() {
+        Amount amount = Amount.ofUnits(Long.MAX_VALUE / 10 + 1, 0).withDecimals(1);
+        assertFalse(amount.fitsInLong());
+        assertEquals(BigInteger.valueOf(Long.MAX_VALUE / 10 + 1).multiply(BigInteger.TEN), amount.toBigInteger());
+    }
+
+    @Test
+    public void upscalePastLongPowerFallsBackToBigInteger() {
+        // 10^19 does not fit in a long, even though the value is one
+        Amount amount = Amount.ofUnits(1, 0).withDecimals(19);
+        assertEquals(BigInteger.TEN.pow(19), amount.toBigInteger());
+    }
+
+    @Test
+    public void bitcoinSupplyConvertsToWei() {
+        Amount satoshis = Amount.ofUnits(21_000_000L * 100_000_000L, Coin.BTC.getDecimals());
+        Amount wei = satoshis.withDecimals(Coin.ETH.getDecimals());
+        assertEquals(new BigInteger("21000000000000000000000000"), wei.toBigInteger());
+        assertEquals(satoshis, wei.withDecimals(Coin.BTC.getDecimals()));
+        assertTrue(wei.withDecimals(Coin.BTC.getDecimals()).fitsInLong());
+    }
+
+    @Test
+    public void downscaleKeepsExactValues() {
+        assertEquals(1, Amount.ofUnits(1_000_000_000_000_000_000L, 18).longUnits(0));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void downscaleRejectsLostUnits() {
+        Amount.ofUnits(1_000_000_000_000_000_001L, 18).withDecimals(0);
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void longUnitsRejectsBigAmounts() {
+        Amount.ofUnits(BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE), 0).longUnits();
+    }
+
+    @Test
+    public void bigIntegerThatFitsIsHeldAsLong() {
+        Amount amount = Amount.ofUnits(BigInteger.valueOf(Long.MAX_VALUE), 0);
+        assertTrue(amount.fitsInLong());
+        assertEquals(Amount.ofUnits(Long.MAX_VALUE, 0), amount);
+    }
+
+    @Test
+    public void acceptsLargest256BitAmount() {
+        assertEquals(TWO_256.subtract(BigInteger.ONE), Amount.ofUnits(TWO_256.subtract(BigInteger.ONE), 18).toBigInteger());
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void rejectsAmountsOver256Bits() {
+        Amount.ofUnits(TWO_256, 18);
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void upscaleRejectsAmountsOver256Bits() {
+        Amount.ofUnits(TWO_256.subtract(BigInteger.ONE), 0).withDecimals(1);
+    }
+
+    @Test
+    public void decimalConversionIsExact() {
+        assertEquals(12_345_678L, Amount.of(new BigDecimal("0.12345678"), 8).longUnits());
+        assertEquals(100_000_000L, Amount.of(new BigDecimal("1E+0"), 8).longUnits());
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void decimalConversionRejectsExtraDecimals() {
+        Amount.of(new BigDecimal("0.123456789"), 8);
+    }
+
+    @Test
+    public void decimalKeepsItsScale() {
+        Amount amount = Amount.of(new BigDecimal("1.50"));
+        assertEquals(2, amount.getDecimals());
+        assertEquals(150, amount.longUnits());
+        assertEquals(0, Amount.of(new BigDecimal("1E+3")).getDecimals());
+        assertEquals(1000, Amount.of(new BigDecimal("1E+3")).longUnits());
+    }
+
+    @Test
+    public void addOverflowFallsBackToBigInteger() {
+        Amount sum = Amount.ofUnits(Long.MAX_VALUE, 0).add(Amount.ofUnits(1, 0));
+        assertEquals(BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE), sum.toBigInteger());
+    }
+
+    @Test
+    public void addRescalesToTheLargerDecimals() {
+        Amount sum = Amount.ofUnits(1, 8).add(Amount.ofUnits(1, 18));
+        assertEquals(18, sum.getDecimals());
+        assertEquals(10_000_000_001L, sum.longUnits());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void subtractRejectsNegativeResults() {
+        Amount.ofUnits(1, 8).subtract(Amount.ofUnits(2, 8));
+    }
+
+    @Test
+    public void comparesAcrossDecimals() {
+        assertEquals(0, Amount.ofUnits(1, 8).compareTo(Amount.ofUnits(10_000_000_000L, 18)));
+        assertTrue(Amount.ofUnits(1, 8).compareTo(Amount.ofUnits(10_000_000_001L, 18)) < 0);
+    }
+
+    @Test
+    public void serializationRoundTrips() throws IOException {
+        assertEquals(Amount.ofUnits(Long.MAX_VALUE, 8), roundTrip(Amount.ofUnits(Long.MAX_VALUE, 8)));
+        Amount big = Amount.ofUnits(TWO_256.subtract(BigInteger.ONE), 18);
+        assertEquals(big, roundTrip(big));
+    }
+
+    private static Amount roundTrip(Amount amount) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        amount.writeTo(new DataOutputStream(bytes));
+        return Amount.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+}
@@ -0,0 +1,55 @@
+package io.github.coinj.chains;
+
+import io.github.coinj.Network;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class AddressPoolTest {
+    private static final byte[] SEED = new byte[32];
+
+    private final HdAccount account = new BitcoinChain(Network.TEST, null, BitcoinChain.AddressType.P2WPKH).createHdAccount(SEED, 0);
+
+    @Test
+    public void issuesAddressesInOrder() {
+        AddressPool pool = new AddressPool(account, HdAccount.RECEIVE, 0, 10);
+        assertEquals(10, pool.getDerived());
+        assertEquals(account.getAddress(0), pool.next());
+        List<String> next = pool.next(3);
+        assertEquals(account.getAddresses(HdAccount.RECEIVE, 1, 3), next);
+        assertEquals(4, pool.getIssued());
+    }
+
+    @Test
+    public void topsUpTheLookaheadOnceHalfIsUsed() {
+        AddressPool pool = new AddressPool(account, HdAccount.RECEIVE, 0, 10);
+        pool.next(5);
+        assertEquals(10, pool.getDerived());
+        pool.next();
+        assertEquals(6 + 10, pool.getDerived());
+        assertEquals(account.getAddress(15), pool.getAccount().getAddress(HdAccount.RECEIVE, 15));
+        assertEquals(15, pool.indexOf(account.getAddress(15)));
+        assertEquals(-1, pool.indexOf(account.getAddress(16)));
+    }
+
+    @Test
+    public void depositToTheLookaheadMarksEarlierAddressesIssued() {
+        AddressPool pool = new AddressPool(account, HdAccount.CHANGE, 0, 10);
+        pool.markIssued(account.getAddress(HdAccount.CHANGE, 7));
+        assertEquals(8, pool.getIssued());
+        assertEquals(account.getAddress(HdAccount.CHANGE, 8), pool.next());
+        // Addresses of the other chain are not in the pool
+        pool.markIssued(account.getAddress(HdAccount.RECEIVE, 9));
+        assertEquals(9, pool.getIssued());
+    }
+
+    @Test
+    public void restartsAfterIssuedAddresses() {
+        AddressPool pool = new AddressPool(account, HdAccount.RECEIVE, 100, 10);
+        assertEquals(110, pool.getDerived());
+        assertEquals(42, pool.indexOf(account.getAddress(42)));
+        assertEquals(account.getAddress(100), pool.next());
+    }
+}
@@ -0,0 +1,136 @@
+package io.github.coinj.chains;
+
+import io.github.coinj.AsyncChain;
+import io.github.coinj.Coin;
+import io.github.coinj.PackedRawTransaction;
+import io.github.coinj.RawTransaction;
+import io.github.coinj.SignedRawTransaction;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BroadcastQueueTest {
+    private static final String TX_ID = "9f96ade4b41d5433f4eda31e1738ec2b36f6e7d1420d94a6af99801a88f7f7ff";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Accepts a transaction once and rejects it after, unless told to reject it outright or to never answer
+    private static class Backend implements AsyncChain {
+        private final Set<String> transactions = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger sends = new AtomicInteger();
+        private volatile boolean hang;
+        private volatile boolean reject;
+        private volatile boolean lookups = true;
+
+        @Override
+        public CompletableFuture<PackedRawTransaction> packTransactionAsync(RawTransaction rawTransaction) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<SignedRawTransaction> signTransactionAsync(PackedRawTransaction transaction, List<String> keys) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<String> sendTransactionAsync(SignedRawTransaction transaction) {
+            sends.incrementAndGet();
+            CompletableFuture<String> result = new CompletableFuture<>();
+            if (reject || !transactions.add(transaction.getTxId())) {
+                result.completeExceptionally(new IOException("HTTP 400 from backend: {\"error\":\"txn-mempool-conflict\"}"));
+            } else if (!hang) {
+                result.complete(transaction.getTxId());
+            }
+            return result;
+        }
+
+        @Override
+        public CompletableFuture<Boolean> hasTransactionAsync(String txId) {
+            return lookups ? CompletableFuture.completedFuture(transactions.contains(txId)) : AsyncChain.super.hasTransactionAsync(txId);
+        }
+    }
+
+    private static SignedRawTransaction transaction() {
+        RawTransaction rawTransaction = new RawTransaction.Builder(Coin.BTC)
+                .from("mipcBbFg9gMiCh81Kj8tqqdgoZub1ZJRfn")
+                .to("2N2JD6wb56AfK4tfmM6PwdVmoYk2dCKf4Br", new BigDecimal("0.5"))
+                .build();
+        return new SignedRawTransaction(rawTransaction, new byte[]{1, 2, 3}, TX_ID);
+    }
+
+    private static BroadcastQueue open(Path file, Backend backend) throws IOException {
+        BroadcastQueue queue = new BroadcastQueue(file, backend);
+        queue.setMaxAttempts(1);
+        queue.setRetryBackoff(Duration.ZERO);
+        return queue;
+    }
+
+    @Test
+    public void replaysSendWhoseAnswerWasLost() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("broadcast.log");
+        Backend backend = new Backend();
+        backend.hang = true;
+        BroadcastQueue queue = open(file, backend);
+        queue.submit(transaction());
+        for (int i = 0; i < 100 && backend.sends.get() == 0; i++) {
+            Thread.sleep(10);
+        }
+        // The backend took the transaction, but the queue stops before its answer and its SENT record
+        queue.close();
+        assertEquals(1, backend.sends.get());
+
+        backend.hang = false;
+        try (BroadcastQueue reopened = open(file, backend)) {
+            assertEquals(1, reopened.getUnconfirmed().size());
+            // The backend rejects the replay as a conflict, yet it has the transaction
+            assertEquals(TX_ID, reopened.getResult(TX_ID).get(5, TimeUnit.SECONDS));
+            assertTrue(backend.sends.get() > 1);
+        }
+    }
+
+    @Test
+    public void failsWhenBackendDoesNotHaveTransaction() throws Exception {
+        Backend backend = new Backend();
+        backend.reject = true;
+        try (BroadcastQueue queue = open(folder.getRoot().toPath().resolve("broadcast.log"), backend)) {
+            try {
+                queue.submit(transaction()).get(5, TimeUnit.SECONDS);
+                fail("Rejected transaction reported as sent");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        }
+    }
+
+    @Test
+    public void failsWhenLookupCannotTell() throws Exception {
+        Backend backend = new Backend();
+        backend.transactions.add(TX_ID);
+        backend.lookups = false;
+        try (BroadcastQueue queue = open(folder.getRoot().toPath().resolve("broadcast.log"), backend)) {
+            try {
+                queue.submit(transaction()).get(5, TimeUnit.SECONDS);
+                fail("Rejected transaction reported as sent");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        }
+    }
+}
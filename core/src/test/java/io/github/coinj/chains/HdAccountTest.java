@@ -0,0 +1,71 @@
+package io.github.coinj.chains;
+
+import io.github.coinj.Network;
+import org.bitcoinj.core.Address;
+import org.bitcoinj.crypto.ChildNumber;
+import org.bitcoinj.crypto.DeterministicKey;
+import org.bitcoinj.crypto.HDKeyDerivation;
+import org.bitcoinj.crypto.MnemonicCode;
+import org.bitcoinj.params.MainNetParams;
+import org.bitcoinj.script.Script;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HdAccountTest {
+    // The mnemonic of the BIP49 and BIP84 test vectors
+    private static final byte[] SEED = MnemonicCode.toSeed(Arrays.asList(
+            "abandon", "abandon", "abandon", "abandon", "abandon", "abandon",
+            "abandon", "abandon", "abandon", "abandon", "abandon", "about"), "");
+
+    private static final BitcoinChain BITCOIN = new BitcoinChain(Network.MAIN, null, BitcoinChain.AddressType.P2WPKH);
+
+    @Test
+    public void derivesBip84Vectors() {
+        HdAccount account = BITCOIN.createHdAccount(SEED, 0);
+        assertEquals("bc1qcr8te4kr609gcawutmrza0j4xv80jy8z306fyu", account.getAddress(HdAccount.RECEIVE, 0));
+        assertEquals("bc1qnjg0jd8228aq7egyzacy8cys3knf9xvrerkf9g", account.getAddress(HdAccount.RECEIVE, 1));
+        assertEquals("bc1q8c6fshw2dlwun7ekn9qwf37cu2rn755upcp6el", account.getAddress(HdAccount.CHANGE, 0));
+        assertEquals(Arrays.asList("bc1qcr8te4kr609gcawutmrza0j4xv80jy8z306fyu", "bc1qnjg0jd8228aq7egyzacy8cys3knf9xvrerkf9g"),
+                account.getAddresses(HdAccount.RECEIVE, 0, 2));
+    }
+
+    @Test
+    public void derivesEthereumAddressOfTheMnemonic() {
+        HdAccount account = new EthereumChain(Network.MAIN, null).createHdAccount(SEED, 0);
+        assertEquals("0x9858effd232b4033e47d90003d41ec34ecaeda94", account.getAddress(0).toLowerCase());
+        assertEquals(account.getAddress(0), account.getKeyPair(HdAccount.RECEIVE, 0).getPublic());
+    }
+
+    @Test
+    public void publicDerivationMatchesBitcoinj() {
+        HdAccount account = BITCOIN.createHdAccount(SEED, 3);
+        // Across batches and off a batch boundary
+        int from = 250;
+        List<String> addresses = account.getAddresses(HdAccount.CHANGE, from, 300);
+        DeterministicKey chainKey = HDKeyDerivation.deriveChildKey(account.getAccountKey(), new ChildNumber(HdAccount.CHANGE, false));
+        for (int i = 0; i < addresses.size(); i += 7) {
+            DeterministicKey key = HDKeyDerivation.deriveChildKey(chainKey, new ChildNumber(from + i, false));
+            assertEquals(Address.fromKey(MainNetParams.get(), key, Script.ScriptType.P2WPKH).toString(), addresses.get(i));
+            assertEquals(addresses.get(i), account.getAddress(HdAccount.CHANGE, from + i));
+            assertEquals(addresses.get(i), account.getKeyPair(HdAccount.CHANGE, from + i).getPublic());
+        }
+    }
+
+    @Test
+    public void watchingAccountDerivesTheSameAddresses() {
+        HdAccount account = BITCOIN.createHdAccount(SEED, 0);
+        HdAccount watching = BITCOIN.createHdAccount(account.getAccountKey().dropPrivateBytes().dropParent());
+        assertTrue(watching.isWatching());
+        assertEquals(account.getAddresses(HdAccount.RECEIVE, 0, 20), watching.getAddresses(HdAccount.RECEIVE, 0, 20));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeIndex() {
+        BITCOIN.createHdAccount(SEED, 0).getAddress(HdAccount.RECEIVE, -1);
+    }
+}
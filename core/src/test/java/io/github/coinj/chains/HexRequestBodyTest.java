@@ -0,0 +1,87 @@
+package io.github.coinj.chains;
+
+import io.github.coinj.Coin;
+import io.github.coinj.RawTransaction;
+import io.github.coinj.SignedRawTransaction;
+import okhttp3.MediaType;
+import okio.Buffer;
+import org.bitcoinj.core.Utils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HexRequestBodyTest {
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    private static String written(HexRequestBody body) throws IOException {
+        Buffer sink = new Buffer();
+        body.writeTo(sink);
+        return sink.readUtf8();
+    }
+
+    @Test
+    public void encodesPayloadBetweenText() throws IOException {
+        HexRequestBody body = new HexRequestBody(JSON, "{\"rawTx\":\"", ByteBuffer.wrap(new byte[]{0x00, 0x0f, (byte) 0xa5, (byte) 0xff}), "\"}");
+        String expected = "{\"rawTx\":\"000fa5ff\"}";
+        assertEquals(expected, written(body));
+        assertEquals(expected.length(), body.contentLength());
+        assertEquals(JSON, body.contentType());
+    }
+
+    @Test
+    public void encodesPayloadsLargerThanAChunk() throws IOException {
+        byte[] payload = new byte[10_000];
+        new Random(1).nextBytes(payload);
+        HexRequestBody body = new HexRequestBody(JSON, "[", ByteBuffer.wrap(payload), "]");
+        String expected = "[" + Utils.HEX.encode(payload) + "]";
+        assertEquals(expected, written(body));
+        assertEquals(expected.length(), body.contentLength());
+    }
+
+    @Test
+    public void writesTheSameBodyAgain() throws IOException {
+        HexRequestBody body = new HexRequestBody(JSON, "", ByteBuffer.wrap(new byte[]{1, 2, 3}), "");
+        assertEquals("010203", written(body));
+        assertEquals("010203", written(body));
+    }
+
+    @Test
+    public void encodesOnlyTheRemainingBytes() throws IOException {
+        ByteBuffer payload = ByteBuffer.wrap(new byte[]{1, 2, 3, 4});
+        payload.position(1).limit(3);
+        HexRequestBody body = new HexRequestBody.Builder().hex(payload).text("-").hex(payload).build(JSON);
+        assertEquals("0203-0203", written(body));
+        assertEquals(9, body.contentLength());
+    }
+
+    @Test
+    public void signedTransactionSharesItsRawBytesReadOnly() {
+        byte[] rawTx = {1, 2, 3};
+        RawTransaction rawTransaction = new RawTransaction.Builder(Coin.BTC)
+                .to("mipcBbFg9gMiCh81Kj8tqqdgoZub1ZJRfn", BigDecimal.ONE)
+                .build();
+        SignedRawTransaction signed = new SignedRawTransaction(rawTransaction, rawTx, "txid");
+        assertTrue(signed.isSigned());
+        ByteBuffer buffer = signed.getRawTx();
+        assertTrue(buffer.isReadOnly());
+        rawTx[0] = 9;
+        assertEquals(9, buffer.get(0));
+        try {
+            buffer.put(0, (byte) 1);
+            fail("Raw bytes are writable");
+        } catch (ReadOnlyBufferException expected) {
+            // the shared bytes stay as signed
+        }
+        assertEquals(9, rawTx[0]);
+        assertFalse(new SignedRawTransaction(rawTransaction, null, null).isSigned());
+    }
+}
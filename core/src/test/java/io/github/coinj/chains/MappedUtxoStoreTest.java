@@ -0,0 +1,100 @@
+package io.github.coinj.chains;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MappedUtxoStoreTest {
+    private static final String ADDRESS = "mipcBbFg9gMiCh81Kj8tqqdgoZub1ZJRfn";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static UnspentOutput output(int n, String script) {
+        return new UnspentOutput(String.format("%064x", n), 0, ADDRESS, script, 1000L * n);
+    }
+
+    private static UnspentOutput output(int n) {
+        return output(n, "76a914" + String.format("%040x", n) + "88ac");
+    }
+
+    private Path file() {
+        return folder.getRoot().toPath().resolve("utxos.dat");
+    }
+
+    @Test
+    public void putIgnoresAddressesThatAreNotWatched() throws IOException {
+        try (MappedUtxoStore store = new MappedUtxoStore(file())) {
+            store.put(ADDRESS, Collections.singletonList(output(1)));
+            assertTrue(store.getAddresses().isEmpty());
+            assertNull(store.get(ADDRESS));
+        }
+    }
+
+    @Test
+    public void putLoadsWatchedAddresses() throws IOException {
+        try (MappedUtxoStore store = new MappedUtxoStore(file())) {
+            store.watch(ADDRESS);
+            assertNull(store.get(ADDRESS));
+            store.put(ADDRESS, Arrays.asList(output(1), output(2)));
+            assertEquals(2, store.get(ADDRESS).size());
+            assertTrue(store.addressesToSync(store.getSyncedHeight()).isEmpty());
+        }
+        try (MappedUtxoStore store = new MappedUtxoStore(file())) {
+            List<UnspentOutput> outputs = store.get(ADDRESS);
+            assertEquals(2, outputs.size());
+            assertEquals(3000L, ((UtxoSet) outputs).totalValue());
+        }
+    }
+
+    @Test
+    public void fetchStartedBeforeUpdateIsNotStored() throws IOException {
+        try (MappedUtxoStore store = new MappedUtxoStore(file())) {
+            store.watch(ADDRESS);
+            long version = store.getVersion(ADDRESS);
+            store.update(Collections.singletonList(output(1)), Collections.emptyList());
+            store.put(ADDRESS, Arrays.asList(output(1), output(2)), version);
+            assertNull(store.get(ADDRESS));
+
+            store.put(ADDRESS, Collections.singletonList(output(2)), store.getVersion(ADDRESS));
+            version = store.getVersion(ADDRESS);
+            store.invalidate(ADDRESS);
+            store.put(ADDRESS, Collections.singletonList(output(3)), version);
+            assertNull(store.get(ADDRESS));
+            store.put(ADDRESS, Collections.singletonList(output(3)), store.getVersion(ADDRESS));
+            assertEquals(output(3).getTxId(), store.get(ADDRESS).get(0).getTxId());
+        }
+    }
+
+    @Test
+    public void outputThatDoesNotFitLeavesAddressWatchedButNotLoaded() throws IOException {
+        StringBuilder script = new StringBuilder("6a");
+        for (int i = 0; i < 100; i++) {
+            script.append("00");
+        }
+        try (MappedUtxoStore store = new MappedUtxoStore(file())) {
+            store.watch(ADDRESS);
+            store.put(ADDRESS, Collections.singletonList(output(1)));
+            store.put(ADDRESS, Arrays.asList(output(1), output(2, script.toString())));
+            assertEquals(Collections.singleton(ADDRESS), store.getAddresses());
+            assertNull(store.get(ADDRESS));
+            assertEquals(Collections.singleton(ADDRESS), store.addressesToSync(store.getSyncedHeight()));
+        }
+        try (MappedUtxoStore store = new MappedUtxoStore(file())) {
+            assertEquals(Collections.singleton(ADDRESS), store.getAddresses());
+            assertNull(store.get(ADDRESS));
+            store.put(ADDRESS, Collections.singletonList(output(3)));
+            assertEquals(1, store.get(ADDRESS).size());
+        }
+    }
+}
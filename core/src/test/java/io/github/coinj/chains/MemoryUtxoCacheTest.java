@@ -0,0 +1,106 @@
+package io.github.coinj.chains;
+
+import com.google.common.base.Ticker;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MemoryUtxoCacheTest {
+    private static final String ADDRESS = "mipcBbFg9gMiCh81Kj8tqqdgoZub1ZJRfn";
+    private static final String SCRIPT = "76a9141d0f172a0ecb48aee1be1f2687d2963ae33f71a188ac";
+
+    private final AtomicLong now = new AtomicLong();
+    private final MemoryUtxoCache cache = new MemoryUtxoCache(Duration.ofSeconds(30), 100, new Ticker() {
+        @Override
+        public long read() {
+            return now.get();
+        }
+    });
+
+    private static UnspentOutput output(int n, int index) {
+        return new UnspentOutput(String.format("%064x", n), index, ADDRESS, SCRIPT, 1000L * n);
+    }
+
+    @Test
+    public void updateSpendsAndAddsOutputs() {
+        cache.put(ADDRESS, Arrays.asList(output(1, 0), output(2, 0), output(2, 1)));
+        cache.update(Arrays.asList(output(2, 0), output(3, 0)), Collections.singletonList(output(4, 1)));
+        assertEquals(Arrays.asList(output(1, 0).getTxId(), output(2, 1).getTxId(), output(4, 1).getTxId()),
+                txIds(cache.get(ADDRESS)));
+        assertEquals(1, cache.get(ADDRESS).get(1).getIndex());
+    }
+
+    @Test
+    public void transactionAppliedTwiceAddsItsOutputsOnce() {
+        cache.put(ADDRESS, Arrays.asList(output(1, 0), output(2, 0)));
+        List<UnspentOutput> spent = Collections.singletonList(output(1, 0));
+        List<UnspentOutput> created = Arrays.asList(output(5, 0), output(5, 1));
+        cache.update(spent, created);
+        cache.update(spent, created);
+        assertEquals(3, cache.get(ADDRESS).size());
+        cache.update(Collections.emptyList(), Arrays.asList(output(6, 0), output(6, 0)));
+        assertEquals(4, cache.get(ADDRESS).size());
+    }
+
+    @Test
+    public void updateKeepsTheExpiryOfTheFetch() {
+        cache.put(ADDRESS, Collections.singletonList(output(1, 0)));
+        now.addAndGet(Duration.ofSeconds(20).toNanos());
+        cache.update(Collections.emptyList(), Collections.singletonList(output(2, 0)));
+        assertEquals(2, cache.get(ADDRESS).size());
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertNull(cache.get(ADDRESS));
+    }
+
+    @Test
+    public void fetchStartedBeforeUpdateIsNotCached() {
+        long version = cache.getVersion(ADDRESS);
+        // The address is not cached yet, the update still outdates the fetch in flight
+        cache.update(Collections.singletonList(output(1, 0)), Collections.emptyList());
+        cache.put(ADDRESS, Arrays.asList(output(1, 0), output(2, 0)), version);
+        assertNull(cache.get(ADDRESS));
+
+        cache.put(ADDRESS, Collections.singletonList(output(2, 0)), cache.getVersion(ADDRESS));
+        assertEquals(1, cache.get(ADDRESS).size());
+    }
+
+    @Test
+    public void fetchStartedBeforeUpdateKeepsTheUpdatedEntry() {
+        cache.put(ADDRESS, Arrays.asList(output(1, 0), output(2, 0)));
+        long version = cache.getVersion(ADDRESS);
+        cache.update(Collections.singletonList(output(1, 0)), Collections.singletonList(output(3, 0)));
+        cache.put(ADDRESS, Arrays.asList(output(1, 0), output(2, 0)), version);
+        assertEquals(Arrays.asList(output(2, 0).getTxId(), output(3, 0).getTxId()), txIds(cache.get(ADDRESS)));
+    }
+
+    @Test
+    public void fetchStartedBeforeInvalidateIsNotCached() {
+        long version = cache.getVersion(ADDRESS);
+        cache.invalidate(ADDRESS);
+        cache.put(ADDRESS, Collections.singletonList(output(1, 0)), version);
+        assertNull(cache.get(ADDRESS));
+    }
+
+    @Test
+    public void changesToOtherAddressesDoNotOutdateAFetch() {
+        long version = cache.getVersion(ADDRESS);
+        cache.invalidate("2N2JD6wb56AfK4tfmM6PwdVmoYk2dCKf4Br");
+        cache.put(ADDRESS, Collections.singletonList(output(1, 0)), version);
+        assertEquals(1, cache.get(ADDRESS).size());
+    }
+
+    private static List<String> txIds(List<UnspentOutput> outputs) {
+        String[] txIds = new String[outputs.size()];
+        for (int i = 0; i < txIds.length; i++) {
+            txIds[i] = outputs.get(i).getTxId();
+        }
+        return Arrays.asList(txIds);
+    }
+}
@@ -0,0 +1,111 @@
+package io.github.coinj.chains;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NonceManagerTest {
+    private static final String ADDRESS = "0x3c3d1d6a6c2e2b2e69d4e9a0b6e4e8c0f0f1c2d3";
+
+    private static CompletableFuture<BigInteger> nonce(long nonce) {
+        return CompletableFuture.completedFuture(BigInteger.valueOf(nonce));
+    }
+
+    private static long reserve(NonceManager manager) throws Exception {
+        return manager.reserve(ADDRESS).get().longValueExact();
+    }
+
+    @Test
+    public void asksTheNodeOnlyOnce() throws Exception {
+        List<String> fetched = new ArrayList<>();
+        NonceManager manager = new NonceManager(address -> {
+            fetched.add(address);
+            return nonce(7);
+        });
+        assertEquals(7, reserve(manager));
+        assertEquals(8, manager.reserve(ADDRESS.toUpperCase()).get().longValueExact());
+        assertEquals(1, fetched.size());
+    }
+
+    @Test
+    public void failedFetchFailsTheReservationAndIsRetried() throws Exception {
+        List<CompletableFuture<BigInteger>> answers = new ArrayList<>();
+        CompletableFuture<BigInteger> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new RuntimeException("No available endpoint"));
+        answers.add(failed);
+        answers.add(nonce(3));
+        NonceManager manager = new NonceManager(address -> answers.remove(0));
+        CompletableFuture<BigInteger> reserved = manager.reserve(ADDRESS);
+        assertTrue(reserved.isCompletedExceptionally());
+        assertEquals(3, reserve(manager));
+    }
+
+    @Test
+    public void fetchThrowingFailsTheReservation() throws Exception {
+        boolean[] broken = {true};
+        NonceManager manager = new NonceManager(address -> {
+            if (broken[0]) {
+                throw new IllegalStateException("No available endpoint");
+            }
+            return nonce(1);
+        });
+        try {
+            manager.reserve(ADDRESS).get();
+            fail("Reserved without a nonce");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        broken[0] = false;
+        assertEquals(1, reserve(manager));
+    }
+
+    @Test
+    public void releasedNoncesAreReservedAgain() throws Exception {
+        NonceManager manager = new NonceManager(address -> nonce(10));
+        assertEquals(10, reserve(manager));
+        assertEquals(11, reserve(manager));
+        assertEquals(12, reserve(manager));
+        assertEquals(13, reserve(manager));
+        manager.release(ADDRESS, BigInteger.valueOf(11));
+        assertEquals(11, reserve(manager));
+        // Releasing the top nonces lowers the next one past the gaps below them
+        manager.release(ADDRESS, BigInteger.valueOf(12));
+        manager.release(ADDRESS, BigInteger.valueOf(13));
+        assertEquals(12, reserve(manager));
+        // Nonces never handed out are ignored
+        manager.release(ADDRESS, BigInteger.valueOf(50));
+        assertEquals(13, reserve(manager));
+    }
+
+    @Test
+    public void resyncDuringFetchDiscardsItsAnswer() throws Exception {
+        List<CompletableFuture<BigInteger>> fetches = new ArrayList<>();
+        NonceManager manager = new NonceManager(address -> {
+            CompletableFuture<BigInteger> fetch = new CompletableFuture<>();
+            fetches.add(fetch);
+            return fetch;
+        });
+        CompletableFuture<BigInteger> first = manager.reserve(ADDRESS);
+        manager.resync(ADDRESS);
+        CompletableFuture<BigInteger> second = manager.reserve(ADDRESS);
+        assertEquals(2, fetches.size());
+
+        fetches.get(0).complete(BigInteger.valueOf(5));
+        assertFalse(second.isDone());
+        fetches.get(1).complete(BigInteger.valueOf(20));
+        assertEquals(new HashSet<>(Arrays.asList(20L, 21L)),
+                new HashSet<>(Arrays.asList(first.get().longValueExact(), second.get().longValueExact())));
+        assertEquals(2, fetches.size());
+    }
+}
@@ -0,0 +1,141 @@
+package io.github.coinj.chains;
+
+import io.github.coinj.Coin;
+import io.github.coinj.PackedData;
+import io.github.coinj.PackedRawTransaction;
+import io.github.coinj.RawTransaction;
+import org.junit.Test;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PackedDataTest {
+    private static final String TX_ID = "9f96ade4b41d5433f4eda31e1738ec2b36f6e7d1420d94a6af99801a88f7f7ff";
+
+    private static PackedRawTransaction roundTrip(PackedRawTransaction packedTx) {
+        return PackedRawTransaction.fromByteArray(packedTx.toByteArray());
+    }
+
+    @Test
+    public void bitcoinDataRoundTrips() {
+        RawTransaction rawTx = new RawTransaction.Builder(Coin.BTC)
+                .from("mipcBbFg9gMiCh81Kj8tqqdgoZub1ZJRfn")
+                .to("2N2JD6wb56AfK4tfmM6PwdVmoYk2dCKf4Br", new BigDecimal("0.5"))
+                .change("mipcBbFg9gMiCh81Kj8tqqdgoZub1ZJRfn")
+                .build();
+        PackedRawTransaction packedTx = new PackedRawTransaction(rawTx);
+        packedTx.setData(new BitcoinPackedData(Arrays.asList(
+                new UnspentOutput(TX_ID, 0, "mipcBbFg9gMiCh81Kj8tqqdgoZub1ZJRfn", "76a9141d0f172a0ecb48aee1be1f2687d2963ae33f71a188ac", 60_000_000L),
+                new UnspentOutput(TX_ID, 7, null, "00141d0f172a0ecb48aee1be1f2687d2963ae33f71a1", 1L))));
+
+        PackedRawTransaction read = roundTrip(packedTx);
+        assertEquals(Coin.BTC, read.getCoin());
+        assertEquals(rawTx.getChange(), read.getChange());
+        assertEquals(rawTx.getOutputs().get(0).getAmount(), read.getOutputs().get(0).getAmount());
+        BitcoinPackedData data = read.getData(BitcoinPackedData.class);
+        assertEquals(2, data.getUnspentOutputs().size());
+        for (int i = 0; i < 2; i++) {
+            UnspentOutput expected = packedTx.getData(BitcoinPackedData.class).getUnspentOutputs().get(i);
+            UnspentOutput actual = data.getUnspentOutputs().get(i);
+            assertEquals(expected.getTxId(), actual.getTxId());
+            assertEquals(expected.getIndex(), actual.getIndex());
+            assertEquals(expected.getAddress(), actual.getAddress());
+            assertEquals(expected.getScript(), actual.getScript());
+            assertEquals(expected.getValue(), actual.getValue());
+        }
+    }
+
+    @Test
+    public void ethereumDataRoundTrips() {
+        RawTransaction rawTx = new RawTransaction.Builder(Coin.USDT)
+                .from("0x3c3d1d6a6c2e2b2e69d4e9a0b6e4e8c0f0f1c2d3")
+                .to("0x8ba1f109551bd432803012645ac136ddd64dba72", new BigDecimal("12.5"))
+                .contract("0xdac17f958d2ee523a2206206994597c13d831ec7")
+                .build();
+        PackedRawTransaction packedTx = new PackedRawTransaction(rawTx);
+        EthereumPackedData data = new EthereumPackedData(BigInteger.valueOf(42), BigInteger.valueOf(20_000_000_000L),
+                BigInteger.valueOf(60_000), rawTx.getContract(), BigInteger.ZERO, new byte[]{(byte) 0xa9, 0x05, (byte) 0x9c, (byte) 0xbb});
+        packedTx.setData(data);
+
+        PackedRawTransaction read = roundTrip(packedTx);
+        assertEquals(Coin.USDT, read.getCoin());
+        assertEquals(rawTx.getContract(), read.getContract());
+        EthereumPackedData readData = read.getData(EthereumPackedData.class);
+        assertEquals(data.getNonce(), readData.getNonce());
+        assertEquals(data.getGasPrice(), readData.getGasPrice());
+        assertEquals(data.getGasLimit(), readData.getGasLimit());
+        assertEquals(data.getTo(), readData.getTo());
+        assertEquals(data.getValue(), readData.getValue());
+        assertArrayEquals(data.getData(), readData.getData());
+    }
+
+    @Test
+    public void transactionWithoutDataRoundTrips() {
+        RawTransaction rawTx = new RawTransaction.Builder(Coin.ETH)
+                .from("0x3c3d1d6a6c2e2b2e69d4e9a0b6e4e8c0f0f1c2d3")
+                .to("0x8ba1f109551bd432803012645ac136ddd64dba72", BigDecimal.ONE)
+                .build();
+        assertNull(roundTrip(new PackedRawTransaction(rawTx)).getData());
+    }
+
+    @Test
+    public void dataOfOtherChainsRoundTripsThroughTheirReader() {
+        PackedRawTransaction packedTx = new PackedRawTransaction(new RawTransaction.Builder(Coin.ETH)
+                .to("0x8ba1f109551bd432803012645ac136ddd64dba72", BigDecimal.ONE)
+                .build());
+        packedTx.setData(new OtherData(OtherData.TAG, 7));
+        assertEquals(7, roundTrip(packedTx).getData(OtherData.class).value);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownTags() {
+        PackedRawTransaction packedTx = new PackedRawTransaction(new RawTransaction.Builder(Coin.ETH)
+                .to("0x8ba1f109551bd432803012645ac136ddd64dba72", BigDecimal.ONE)
+                .build());
+        packedTx.setData(new OtherData((byte) 99, 7));
+        roundTrip(packedTx);
+    }
+
+    // Listed in the test resources as the reader of its tag
+    public static class OtherData implements PackedData {
+        static final byte TAG = 100;
+
+        private final byte tag;
+        private final int value;
+
+        OtherData(byte tag, int value) {
+            this.tag = tag;
+            this.value = value;
+        }
+
+        @Override
+        public byte getTag() {
+            return tag;
+        }
+
+        @Override
+        public void writeTo(DataOutput out) throws IOException {
+            out.writeInt(value);
+        }
+
+        public static class Reader implements PackedData.Reader {
+            @Override
+            public byte getTag() {
+                return TAG;
+            }
+
+            @Override
+            public OtherData readFrom(DataInput in) throws IOException {
+                return new OtherData(TAG, in.readInt());
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package io.github.coinj.chains;
+
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.params.MainNetParams;
+import org.bitcoinj.script.Script;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SignatureHasherTest {
+    // The native P2WPKH example of BIP143
+    private static final String UNSIGNED_TX = "0100000002fff7f7881a8099afa6940d42d1e7f6362bec38171ea3edf433541db4e4ad969f"
+            + "0000000000eeffffffef51e1b804cc89d182d279655c3aa89e815b1b309fe287d9b2b55d57b90ec68a0100000000ffffffff02"
+            + "202cb206000000001976a9148280b37df378db99f66f85c95a783a76ac7a6d5988ac9093510d000000001976a9143bde42dbee"
+            + "7e4dbe6a21b2d50ce2f0167faa815988ac11000000";
+    private static final String SCRIPT_CODE = "76a9141d0f172a0ecb48aee1be1f2687d2963ae33f71a188ac";
+    private static final String SIGHASH = "c37af31116d1b27caf68aae9e3ac82f1477929014d5b917657d0eb49478cb670";
+
+    private static Transaction transaction() {
+        return new Transaction(MainNetParams.get(), Utils.HEX.decode(UNSIGNED_TX));
+    }
+
+    @Test
+    public void witnessSignatureMatchesBip143Vector() {
+        SignatureHasher hasher = new SignatureHasher(transaction());
+        assertEquals(SIGHASH, hasher.hashForWitnessSignature(1, Utils.HEX.decode(SCRIPT_CODE), Coin.valueOf(600_000_000L)).toString());
+    }
+
+    @Test
+    public void legacySignatureMatchesBitcoinj() {
+        Transaction tx = transaction();
+        byte[] scriptCode = Utils.HEX.decode(SCRIPT_CODE);
+        SignatureHasher hasher = new SignatureHasher(tx);
+        for (int i = 0; i < tx.getInputs().size(); i++) {
+            assertEquals(tx.hashForSignature(i, new Script(scriptCode), Transaction.SigHash.ALL, false),
+                    hasher.hashForSignature(i, scriptCode));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package io.github.coinj.chains;
+
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.script.Script;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class UtxoSetTest {
+    private static final String TX_ID = "9f96ade4b41d5433f4eda31e1738ec2b36f6e7d1420d94a6af99801a88f7f7ff";
+    private static final String[] SCRIPTS = {
+            "76a9141d0f172a0ecb48aee1be1f2687d2963ae33f71a188ac",
+            "00141d0f172a0ecb48aee1be1f2687d2963ae33f71a1",
+            "a9141d0f172a0ecb48aee1be1f2687d2963ae33f71a187",
+            "00201d0f172a0ecb48aee1be1f2687d2963ae33f71a11d0f172a0ecb48aee1be1f26",
+            "21025476c2e83188368da1ff3e292e7acafcdb3566bb0ad253f62fc70f07aeee6357ac",
+            "6a0568656c6c6f",
+    };
+
+    @Test
+    public void classifiesScriptsOnceWhenBuilt() {
+        UtxoSet.Builder builder = new UtxoSet.Builder();
+        for (int i = 0; i < SCRIPTS.length; i++) {
+            builder.add(TX_ID, i, null, SCRIPTS[i], 1000);
+        }
+        UtxoSet set = builder.build();
+        assertEquals(Script.ScriptType.P2PKH, set.get(0).getScriptType());
+        assertEquals(Script.ScriptType.P2WPKH, set.get(1).getScriptType());
+        assertEquals(Script.ScriptType.P2SH, set.get(2).getScriptType());
+        assertEquals(Script.ScriptType.P2WSH, set.get(3).getScriptType());
+        assertEquals(Script.ScriptType.P2PK, set.get(4).getScriptType());
+        assertNull(set.get(5).getScriptType());
+        for (int i = 0; i < SCRIPTS.length; i++) {
+            UnspentOutput plain = new UnspentOutput(TX_ID, i, null, SCRIPTS[i], 1000);
+            assertEquals(plain.getScriptType(), set.get(i).getScriptType());
+            assertEquals(SCRIPTS[i], set.get(i).getScript());
+        }
+    }
+
+    @Test
+    public void classifiesBinaryScripts() {
+        byte[] script = Utils.HEX.decode(SCRIPTS[1]);
+        UtxoSet set = new UtxoSet.Builder().add(Utils.HEX.decode(TX_ID), 0, null, script, 1000).build();
+        assertEquals(Script.ScriptType.P2WPKH, set.get(0).getScriptType());
+        assertEquals(TX_ID, set.get(0).getTxId());
+    }
+
+    @Test
+    public void parsesBitcoreOutputs() throws IOException {
+        String json = "[{\"mintTxid\":\"" + TX_ID + "\",\"mintIndex\":3,\"address\":\"mipcBbFg9gMiCh81Kj8tqqdgoZub1ZJRfn\","
+                + "\"script\":\"" + SCRIPTS[0] + "\",\"value\":600000000,\"spentTxid\":null}]";
+        UtxoSet set = UtxoSet.parse(new StringReader(json));
+        assertEquals(1, set.size());
+        assertEquals(3, set.get(0).getIndex());
+        assertEquals("mipcBbFg9gMiCh81Kj8tqqdgoZub1ZJRfn", set.get(0).getAddress());
+        assertEquals(600_000_000L, set.totalValue());
+        assertEquals(Script.ScriptType.P2PKH, set.get(0).getScriptType());
+    }
+}
@@ -0,0 +1,119 @@
+package io.github.coinj.chains.selection;
+
+import io.github.coinj.chains.UnspentOutput;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CoinSelectorTest {
+    private static final int INPUT_SIZE = 68;
+    private static final int BASE_SIZE = 10;
+    private static final int CHANGE_OUTPUT_SIZE = 31;
+    private static final long DUST = 546;
+
+    private static CoinSelectionParams params(long target) {
+        return new CoinSelectionParams.Builder()
+                .target(target)
+                .feeRate(1)
+                .baseSize(BASE_SIZE)
+                .changeOutputSize(CHANGE_OUTPUT_SIZE)
+                .changeSpendSize(INPUT_SIZE)
+                .dustThreshold(DUST)
+                .inputSize(output -> INPUT_SIZE)
+                .build();
+    }
+
+    // Outputs worth the given effective values at one satoshi per byte
+    private static List<UnspentOutput> outputs(long... effectiveValues) {
+        List<UnspentOutput> outputs = new ArrayList<>();
+        for (int i = 0; i < effectiveValues.length; i++) {
+            outputs.add(new UnspentOutput(String.format("%064x", i), 0, "address", "", effectiveValues[i] + INPUT_SIZE));
+        }
+        return outputs;
+    }
+
+    private static long sum(List<UnspentOutput> outputs) {
+        long total = 0;
+        for (UnspentOutput output : outputs) {
+            total += output.getValue();
+        }
+        return total;
+    }
+
+    @Test
+    public void branchAndBoundFindsExactMatchWithoutChange() {
+        List<UnspentOutput> outputs = outputs(50_000, 20_000, 10_000);
+        CoinSelection selection = new BranchAndBoundCoinSelector().select(outputs, params(30_000 - BASE_SIZE));
+
+        assertNotNull(selection);
+        assertFalse(selection.hasChange());
+        assertEquals(Arrays.asList(outputs.get(1), outputs.get(2)), selection.getSelected());
+        assertEquals(BASE_SIZE + 2 * INPUT_SIZE, selection.getFee());
+        assertEquals(0, selection.getWaste());
+    }
+
+    @Test
+    public void branchAndBoundGivesUpWhenChangeIsNeeded() {
+        assertNull(new BranchAndBoundCoinSelector().select(outputs(50_000, 20_000, 10_000), params(5_000)));
+    }
+
+    @Test
+    public void defaultSelectorFallsBackToKnapsackWithChange() {
+        List<UnspentOutput> outputs = outputs(50_000, 20_000, 10_000);
+        CoinSelection selection = CoinSelector.defaultSelector().select(outputs, params(5_000));
+
+        assertNotNull(selection);
+        assertEquals(Arrays.asList(outputs.get(2)), selection.getSelected());
+        assertTrue(selection.hasChange());
+        long fee = BASE_SIZE + INPUT_SIZE + CHANGE_OUTPUT_SIZE;
+        assertEquals(fee, selection.getFee());
+        assertEquals(sum(selection.getSelected()) - 5_000 - fee, selection.getChange());
+    }
+
+    @Test
+    public void changeBelowDustGoesToFee() {
+        long excess = 300;
+        long target = 1_000_000 - BASE_SIZE - excess;
+        CoinSelection selection = new KnapsackCoinSelector(100, new Random(1)).select(outputs(1_000_000), params(target));
+
+        assertNotNull(selection);
+        assertFalse(selection.hasChange());
+        assertEquals(BASE_SIZE + INPUT_SIZE + excess, selection.getFee());
+        assertEquals(sum(selection.getSelected()), target + selection.getFee());
+    }
+
+    @Test
+    public void completeAddsChangeAtDustThreshold() {
+        long fee = BASE_SIZE + INPUT_SIZE + CHANGE_OUTPUT_SIZE;
+        long target = 100_000 + INPUT_SIZE - fee - DUST;
+
+        CoinSelection selection = params(target).complete(outputs(100_000));
+        assertEquals(DUST, selection.getChange());
+        assertEquals(fee, selection.getFee());
+
+        selection = params(target + 1).complete(outputs(100_000));
+        assertFalse(selection.hasChange());
+        // The would-be change and what its output would have cost both go to the fee
+        assertEquals(fee + DUST - 1, selection.getFee());
+    }
+
+    @Test
+    public void insufficientFundsSelectNothing() {
+        List<UnspentOutput> outputs = outputs(10_000, 20_000);
+        assertNull(CoinSelector.defaultSelector().select(outputs, params(30_000)));
+        assertNull(new LargestFirstCoinSelector().select(outputs, params(30_000)));
+    }
+
+    @Test
+    public void outputsWorthLessThanTheirFeeAreSkipped() {
+        List<UnspentOutput> outputs = outputs(-10, 20_000);
+        assertEquals(1, params(1_000).spendable(outputs).size());
+        CoinSelection selection = new LargestFirstCoinSelector().select(outputs, params(1_000));
+        assertEquals(Arrays.asList(outputs.get(1)), selection.getSelected());
+    }
+}
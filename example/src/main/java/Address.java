@@ -9,7 +9,7 @@ import java.util.List;
 public class Address {
     public static void main(String[] args) {
         BitcoinChain bitcoin = new BitcoinChain(Network.TEST, null);
-        Chain ethereum = new EthereumChain(Network.TEST, null, EthereumChain.Coin.ETH);
+        Chain ethereum = new EthereumChain(Network.TEST, null);
 
         System.out.println(bitcoin.generateKeyPair());
         System.out.println(bitcoin.generateKeyPair("7783f51f3cab49b1cab5952de8c13472ae196581fba89addf145f1b71c42f4a4"));
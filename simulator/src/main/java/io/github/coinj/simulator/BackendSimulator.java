@@ -0,0 +1,210 @@
+package io.github.coinj.simulator;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import io.github.coinj.Network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Embeddable stand-in for the bitcore REST API and an Ethereum JSON-RPC node, serving the calls of
+ * {@code BitcoinChain} and {@code EthereumChain} from memory. Every request can be delayed, failed or dropped, and
+ * requests are counted by path and method, so concurrency, caching and batching can be measured offline.
+ *
+ * <pre>
+ * BackendSimulator simulator = new BackendSimulator(Network.TEST);
+ * simulator.getBitcoin().addWallet(address, 1_000_000, 10_000);
+ * Chain bitcoin = new BitcoinChain(Network.TEST, simulator.getBitcoinUrl());
+ * </pre>
+ */
+public class BackendSimulator implements Closeable {
+    public static final String BITCOIN_PATH = "/btc";
+    public static final String ETHEREUM_PATH = "/eth";
+    public static final int DEFAULT_ERROR_STATUS = 503;
+
+    static {
+        // Without it small responses wait out the client's delayed ack, a 40ms floor under every request
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final BitcoinBackend bitcoin;
+    private final EthereumBackend ethereum;
+    private final ConcurrentMap<String, LongAdder> requestCounts = new ConcurrentHashMap<>();
+    private final Random random = new Random(0);
+
+    private volatile long latencyNanos;
+    private volatile long jitterNanos;
+    private volatile double errorRate;
+    private volatile int errorStatus = DEFAULT_ERROR_STATUS;
+    private volatile double dropRate;
+
+    public BackendSimulator(Network network) throws IOException {
+        this(network, 0);
+    }
+
+    /**
+     * Starts serving on the port of the loopback address, or on a free one for port 0.
+     */
+    public BackendSimulator(Network network, int port) throws IOException {
+        this.bitcoin = new BitcoinBackend(this, network);
+        this.ethereum = new EthereumBackend(this);
+        // A thread per request in flight, so latency holds requests up without limiting concurrency
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "coinj-simulator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.setExecutor(executor);
+        server.createContext(BITCOIN_PATH, exchange -> handle(exchange, bitcoin));
+        server.createContext(ETHEREUM_PATH, exchange -> handle(exchange, ethereum));
+        server.start();
+    }
+
+    public BitcoinBackend getBitcoin() {
+        return bitcoin;
+    }
+
+    public EthereumBackend getEthereum() {
+        return ethereum;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public String getBitcoinUrl() {
+        return "http://127.0.0.1:" + getPort() + BITCOIN_PATH;
+    }
+
+    public String getEthereumUrl() {
+        return "http://127.0.0.1:" + getPort() + ETHEREUM_PATH;
+    }
+
+    /**
+     * Delays every response by the latency plus a uniformly random share of the jitter.
+     */
+    public void setLatency(Duration latency, Duration jitter) {
+        Preconditions.checkArgument(!latency.isNegative() && !jitter.isNegative(), "Negative latency");
+        this.latencyNanos = latency.toNanos();
+        this.jitterNanos = jitter.toNanos();
+    }
+
+    /**
+     * Answers the given share of requests with the error status instead of serving them.
+     */
+    public void setErrorRate(double errorRate) {
+        Preconditions.checkArgument(errorRate >= 0 && errorRate <= 1, "Rate must be between 0 and 1");
+        this.errorRate = errorRate;
+    }
+
+    public void setErrorStatus(int errorStatus) {
+        this.errorStatus = errorStatus;
+    }
+
+    /**
+     * Closes the connection of the given share of requests without answering.
+     */
+    public void setDropRate(double dropRate) {
+        Preconditions.checkArgument(dropRate >= 0 && dropRate <= 1, "Rate must be between 0 and 1");
+        this.dropRate = dropRate;
+    }
+
+    public void setSeed(long seed) {
+        random.setSeed(seed);
+    }
+
+    /**
+     * Returns the number of requests served for a key such as {@code "GET /address"}, {@code "POST /tx/send"},
+     * {@code "eth_gasPrice"} or {@code "eth batch"}; injected failures count as {@code "failed"} and {@code "dropped"}.
+     */
+    public long getRequestCount(String key) {
+        LongAdder count = requestCounts.get(key);
+        return count == null ? 0 : count.sum();
+    }
+
+    public Map<String, Long> getRequestCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        requestCounts.forEach((key, count) -> counts.put(key, count.sum()));
+        return counts;
+    }
+
+    public void resetRequestCounts() {
+        requestCounts.clear();
+    }
+
+    void count(String key) {
+        requestCounts.computeIfAbsent(key, k -> new LongAdder()).increment();
+    }
+
+    private void handle(HttpExchange exchange, HttpHandler handler) {
+        try {
+            long delay = latencyNanos + (jitterNanos == 0 ? 0 : (long) (random.nextDouble() * jitterNanos));
+            if (delay > 0) {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            }
+            double roll = random.nextDouble();
+            if (roll < dropRate) {
+                count("dropped");
+                return;
+            }
+            if (roll < dropRate + errorRate) {
+                count("failed");
+                respond(exchange, errorStatus, "{\"error\":\"Injected failure\"}");
+                return;
+            }
+            handler.handle(exchange);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            try {
+                respond(exchange, 500, "{\"error\":\"" + e + "\"}");
+            } catch (IOException | RuntimeException ignored) {
+                // Headers already sent; closing the exchange cuts the response short
+            }
+        } finally {
+            // Without a response this closes the connection, which is how drops reach the client
+            exchange.close();
+        }
+    }
+
+    static String readBody(HttpExchange exchange) throws IOException {
+        return new String(ByteStreams.toByteArray(exchange.getRequestBody()), StandardCharsets.UTF_8);
+    }
+
+    static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,291 @@
+package io.github.coinj.simulator;
+
+import com.google.common.base.Preconditions;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import io.github.coinj.Network;
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.core.VerificationException;
+import org.bitcoinj.params.MainNetParams;
+import org.bitcoinj.params.TestNet3Params;
+import org.bitcoinj.script.ScriptBuilder;
+import org.bitcoinj.script.ScriptException;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The bitcore paths {@code BitcoinChain} calls: {@code /address/<address>?unspent=true}, {@code /fee/<target>},
+ * {@code /block/tip}, {@code /tx/<txid>} and {@code /tx/send}. Wallets hold synthetic outputs, which exist only as a
+ * count and are streamed out on request, so a wallet of millions of outputs costs a bit per output. Sent transactions
+ * spend their inputs and pay the wallets they send to.
+ */
+public class BitcoinBackend implements HttpHandler {
+    // Synthetic transaction ids are the wallet's prefix followed by the output number
+    private static final int PREFIX_LENGTH = 48;
+
+    private final BackendSimulator simulator;
+    private final NetworkParameters params;
+    private final Map<String, Wallet> wallets = new HashMap<>();
+    private final Map<String, Wallet> walletsByPrefix = new HashMap<>();
+    private final Set<String> transactions = new HashSet<>();
+    private volatile double feeRate = 0.0001;
+    private volatile long height = 1000;
+
+    BitcoinBackend(BackendSimulator simulator, Network network) {
+        this.simulator = simulator;
+        this.params = network == Network.MAIN ? MainNetParams.get() : TestNet3Params.get();
+    }
+
+    /**
+     * Gives the address the given number of unspent outputs of the given value in satoshis.
+     */
+    public synchronized void addWallet(String address, int outputs, long value) {
+        Preconditions.checkArgument(outputs >= 0, "Negative output count");
+        Preconditions.checkState(!wallets.containsKey(address), "Wallet exists: %s", address);
+        String script = Utils.HEX.encode(ScriptBuilder.createOutputScript(Address.fromString(params, address)).getProgram());
+        String prefix = Sha256Hash.of(address.getBytes(StandardCharsets.UTF_8)).toString().substring(0, PREFIX_LENGTH);
+        Wallet wallet = new Wallet(script, prefix, outputs, value);
+        wallets.put(address, wallet);
+        walletsByPrefix.put(prefix, wallet);
+    }
+
+    public synchronized int getUnspentCount(String address) {
+        Wallet wallet = wallets.get(address);
+        return wallet == null ? 0 : wallet.synthetic - wallet.spent.cardinality() + wallet.received.size();
+    }
+
+    /**
+     * Sets the fee rate answered for every target, in BTC per kilobyte as bitcore reports it.
+     */
+    public void setFeeRate(double feeRate) {
+        this.feeRate = feeRate;
+    }
+
+    public long getHeight() {
+        return height;
+    }
+
+    public synchronized long mineBlock() {
+        return ++height;
+    }
+
+    public synchronized int getTransactionCount() {
+        return transactions.size();
+    }
+
+    public synchronized boolean hasTransaction(String txId) {
+        return transactions.contains(txId);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath().substring(BackendSimulator.BITCOIN_PATH.length());
+        String method = exchange.getRequestMethod();
+        if (method.equals("GET") && path.startsWith("/address/")) {
+            simulator.count("GET /address");
+            streamUnspentOutputs(exchange, path.substring("/address/".length()));
+        } else if (method.equals("GET") && path.startsWith("/fee/")) {
+            simulator.count("GET /fee");
+            String target = path.substring("/fee/".length());
+            BackendSimulator.respond(exchange, 200, new JSONObject().put("feerate", feeRate).put("blocks", Integer.parseInt(target)).toString());
+        } else if (method.equals("GET") && path.equals("/block/tip")) {
+            simulator.count("GET /block/tip");
+            long tip = height;
+            BackendSimulator.respond(exchange, 200, new JSONObject().put("height", tip)
+                    .put("hash", Sha256Hash.of(Long.toString(tip).getBytes(StandardCharsets.UTF_8)).toString()).toString());
+        } else if (method.equals("GET") && path.startsWith("/tx/")) {
+            simulator.count("GET /tx");
+            String txId = path.substring("/tx/".length());
+            if (hasTransaction(txId)) {
+                BackendSimulator.respond(exchange, 200, new JSONObject().put("txid", txId).toString());
+            } else {
+                BackendSimulator.respond(exchange, 404, "{\"error\":\"Not found\"}");
+            }
+        } else if (method.equals("POST") && path.equals("/tx/send")) {
+            simulator.count("POST /tx/send");
+            send(exchange, new JSONObject(BackendSimulator.readBody(exchange)).getString("rawTx"));
+        } else {
+            BackendSimulator.respond(exchange, 404, "{\"error\":\"Not found\"}");
+        }
+    }
+
+    private void streamUnspentOutputs(HttpExchange exchange, String address) throws IOException {
+        Wallet wallet;
+        BitSet spent;
+        List<Output> received;
+        synchronized (this) {
+            wallet = wallets.get(address);
+            spent = wallet == null ? null : (BitSet) wallet.spent.clone();
+            received = wallet == null ? null : new ArrayList<>(wallet.received.values());
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 64 * 1024)) {
+            out.write('[');
+            if (wallet != null) {
+                boolean first = true;
+                for (int i = spent.nextClearBit(0); i < wallet.synthetic; i = spent.nextClearBit(i + 1)) {
+                    first = writeOutput(out, first, wallet.syntheticTxId(i), 0, address, wallet.script, wallet.value);
+                }
+                for (Output output : received) {
+                    first = writeOutput(out, first, output.txId, output.index, address, output.script, output.value);
+                }
+            }
+            out.write(']');
+        }
+    }
+
+    private boolean writeOutput(Writer out, boolean first, String txId, int index, String address, String script, long value) throws IOException {
+        if (!first) {
+            out.write(',');
+        }
+        out.write("{\"mintTxid\":\"");
+        out.write(txId);
+        out.write("\",\"mintIndex\":");
+        out.write(Integer.toString(index));
+        out.write(",\"mintHeight\":");
+        out.write(Long.toString(height));
+        out.write(",\"address\":\"");
+        out.write(address);
+        out.write("\",\"script\":\"");
+        out.write(script);
+        out.write("\",\"value\":");
+        out.write(Long.toString(value));
+        out.write('}');
+        return false;
+    }
+
+    private void send(HttpExchange exchange, String rawTx) throws IOException {
+        Transaction tx;
+        try {
+            tx = new Transaction(params, Utils.HEX.decode(rawTx));
+            tx.verify();
+        } catch (VerificationException | IllegalArgumentException e) {
+            BackendSimulator.respond(exchange, 400, new JSONObject().put("error", "Invalid transaction: " + e.getMessage()).toString());
+            return;
+        }
+        String txId = tx.getTxId().toString();
+        String error = apply(tx, txId);
+        if (error != null) {
+            BackendSimulator.respond(exchange, 400, new JSONObject().put("error", error).toString());
+        } else {
+            BackendSimulator.respond(exchange, 200, new JSONObject().put("txid", txId).toString());
+        }
+    }
+
+    private synchronized String apply(Transaction tx, String txId) {
+        if (transactions.contains(txId)) {
+            return "Transaction already in block chain";
+        }
+        List<TransactionOutPoint> outPoints = new ArrayList<>();
+        for (TransactionInput input : tx.getInputs()) {
+            if (!isUnspent(input.getOutpoint())) {
+                return "Missing inputs";
+            }
+            outPoints.add(input.getOutpoint());
+        }
+        for (TransactionOutPoint outPoint : outPoints) {
+            spend(outPoint);
+        }
+        for (TransactionOutput output : tx.getOutputs()) {
+            try {
+                Wallet wallet = wallets.get(output.getScriptPubKey().getToAddress(params).toString());
+                if (wallet != null) {
+                    Output created = new Output(txId, output.getIndex(), Utils.HEX.encode(output.getScriptBytes()), output.getValue().getValue());
+                    wallet.received.put(txId + ":" + output.getIndex(), created);
+                }
+            } catch (ScriptException e) {
+                // Not an address output, nobody to pay
+            }
+        }
+        transactions.add(txId);
+        return null;
+    }
+
+    private boolean isUnspent(TransactionOutPoint outPoint) {
+        String txId = outPoint.getHash().toString();
+        Wallet wallet = walletsByPrefix.get(txId.substring(0, PREFIX_LENGTH));
+        if (wallet != null) {
+            int i = wallet.syntheticIndex(txId);
+            return outPoint.getIndex() == 0 && i >= 0 && i < wallet.synthetic && !wallet.spent.get(i);
+        }
+        for (Wallet candidate : wallets.values()) {
+            if (candidate.received.containsKey(txId + ":" + outPoint.getIndex())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void spend(TransactionOutPoint outPoint) {
+        String txId = outPoint.getHash().toString();
+        Wallet wallet = walletsByPrefix.get(txId.substring(0, PREFIX_LENGTH));
+        if (wallet != null) {
+            wallet.spent.set(wallet.syntheticIndex(txId));
+            return;
+        }
+        for (Wallet candidate : wallets.values()) {
+            candidate.received.remove(txId + ":" + outPoint.getIndex());
+        }
+    }
+
+    private static class Wallet {
+        private final String script;
+        private final String prefix;
+        private final int synthetic;
+        private final long value;
+        private final BitSet spent = new BitSet();
+        private final Map<String, Output> received = new LinkedHashMap<>();
+
+        Wallet(String script, String prefix, int synthetic, long value) {
+            this.script = script;
+            this.prefix = prefix;
+            this.synthetic = synthetic;
+            this.value = value;
+        }
+
+        String syntheticTxId(int i) {
+            String hex = Integer.toHexString(i);
+            return prefix + "0000000000000000".substring(hex.length()) + hex;
+        }
+
+        int syntheticIndex(String txId) {
+            long i = Long.parseUnsignedLong(txId.substring(PREFIX_LENGTH), 16);
+            return i > Integer.MAX_VALUE ? -1 : (int) i;
+        }
+    }
+
+    private static class Output {
+        private final String txId;
+        private final int index;
+        private final String script;
+        private final long value;
+
+        Output(String txId, int index, String script, long value) {
+            this.txId = txId;
+            this.index = index;
+            this.script = script;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package io.github.coinj.simulator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.web3j.crypto.Hash;
+import org.web3j.crypto.RawTransaction;
+import org.web3j.crypto.SignedRawTransaction;
+import org.web3j.crypto.TransactionDecoder;
+import org.web3j.utils.Numeric;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.SignatureException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The JSON-RPC methods {@code EthereumChain} calls, single or batched: {@code eth_getTransactionCount},
+ * {@code eth_gasPrice}, {@code eth_estimateGas}, {@code eth_call} for a token's {@code decimals()} and
+ * {@code symbol()}, {@code eth_getTransactionByHash} and {@code eth_sendRawTransaction}, which checks the sender's
+ * nonce like a node would: nonces may arrive out of order, the pending count only moves past a nonce once every one
+ * below it was sent.
+ */
+public class EthereumBackend implements HttpHandler {
+    private static final String DECIMALS = "0x313ce567";
+    private static final String SYMBOL = "0x95d89b41";
+
+    private final BackendSimulator simulator;
+    private final Map<String, Sender> senders = new HashMap<>();
+    private final Set<String> transactions = new HashSet<>();
+    private final Map<String, Token> tokens = new ConcurrentHashMap<>();
+    private volatile BigInteger gasPrice = BigInteger.valueOf(20_000_000_000L);
+    private volatile long transferGas = 21_000;
+    private volatile long callGas = 60_000;
+
+    EthereumBackend(BackendSimulator simulator) {
+        this.simulator = simulator;
+    }
+
+    public void addToken(String contract, String symbol, int decimals) {
+        tokens.put(contract.toLowerCase(Locale.ROOT), new Token(symbol, decimals));
+    }
+
+    public void setGasPrice(BigInteger gasPrice) {
+        this.gasPrice = gasPrice;
+    }
+
+    /**
+     * Sets the estimates answered for plain transfers and for contract calls.
+     */
+    public void setGasEstimates(long transferGas, long callGas) {
+        this.transferGas = transferGas;
+        this.callGas = callGas;
+    }
+
+    public synchronized long getNonce(String address) {
+        Sender sender = senders.get(address.toLowerCase(Locale.ROOT));
+        return sender == null ? 0 : sender.next;
+    }
+
+    public synchronized void setNonce(String address, long nonce) {
+        Sender sender = senders.computeIfAbsent(address.toLowerCase(Locale.ROOT), key -> new Sender());
+        sender.next = nonce;
+        sender.queued.headSet(nonce).clear();
+        sender.advance();
+    }
+
+    public synchronized int getTransactionCount() {
+        return transactions.size();
+    }
+
+    public synchronized boolean hasTransaction(String hash) {
+        return transactions.contains(hash);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            BackendSimulator.respond(exchange, 405, "{\"error\":\"Method not allowed\"}");
+            return;
+        }
+        Object request = new JSONTokener(BackendSimulator.readBody(exchange)).nextValue();
+        if (request instanceof JSONArray) {
+            simulator.count("eth batch");
+            JSONArray replies = new JSONArray();
+            for (Object call : (JSONArray) request) {
+                replies.put(answer((JSONObject) call));
+            }
+            BackendSimulator.respond(exchange, 200, replies.toString());
+        } else {
+            BackendSimulator.respond(exchange, 200, answer((JSONObject) request).toString());
+        }
+    }
+
+    private JSONObject answer(JSONObject call) {
+        String method = call.getString("method");
+        simulator.count(method);
+        JSONArray params = call.optJSONArray("params");
+        JSONObject reply = new JSONObject().put("jsonrpc", "2.0").put("id", call.get("id"));
+        try {
+            return reply.put("result", result(method, params));
+        } catch (RpcException e) {
+            return reply.put("error", new JSONObject().put("code", e.code).put("message", e.getMessage()));
+        }
+    }
+
+    private Object result(String method, JSONArray params) throws RpcException {
+        switch (method) {
+            case "eth_getTransactionCount":
+                return Numeric.encodeQuantity(BigInteger.valueOf(getNonce(params.getString(0))));
+            case "eth_gasPrice":
+                return Numeric.encodeQuantity(gasPrice);
+            case "eth_estimateGas":
+                String data = params.getJSONObject(0).optString("data", "0x");
+                return Numeric.encodeQuantity(BigInteger.valueOf(data.length() > 2 ? callGas : transferGas));
+            case "eth_call":
+                return call(params.getJSONObject(0));
+            case "eth_getTransactionByHash":
+                String hash = params.getString(0).toLowerCase(Locale.ROOT);
+                return hasTransaction(hash) ? new JSONObject().put("hash", hash) : JSONObject.NULL;
+            case "eth_sendRawTransaction":
+                return send(params.getString(0));
+            default:
+                throw new RpcException(-32601, "The method " + method + " does not exist/is not available");
+        }
+    }
+
+    private String call(JSONObject callTx) throws RpcException {
+        Token token = tokens.get(callTx.optString("to").toLowerCase(Locale.ROOT));
+        if (token == null) {
+            throw new RpcException(-32000, "execution reverted");
+        }
+        String data = callTx.optString("data", callTx.optString("input"));
+        if (data.startsWith(DECIMALS)) {
+            return Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(token.decimals), 64);
+        }
+        if (data.startsWith(SYMBOL)) {
+            byte[] symbol = token.symbol.getBytes(StandardCharsets.UTF_8);
+            byte[] padded = new byte[(symbol.length + 31) / 32 * 32];
+            System.arraycopy(symbol, 0, padded, 0, symbol.length);
+            return Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(32), 64)
+                    + Numeric.toHexStringNoPrefixZeroPadded(BigInteger.valueOf(symbol.length), 64)
+                    + Numeric.toHexStringNoPrefix(padded);
+        }
+        throw new RpcException(-32000, "execution reverted");
+    }
+
+    private String send(String signedTx) throws RpcException {
+        RawTransaction tx;
+        String from;
+        try {
+            tx = TransactionDecoder.decode(signedTx);
+            if (!(tx instanceof SignedRawTransaction)) {
+                throw new RpcException(-32000, "invalid sender");
+            }
+            from = ((SignedRawTransaction) tx).getFrom().toLowerCase(Locale.ROOT);
+        } catch (SignatureException | RuntimeException e) {
+            throw new RpcException(-32000, "rlp: " + e.getMessage());
+        }
+        String hash = Numeric.toHexString(Hash.sha3(Numeric.hexStringToByteArray(signedTx)));
+        long nonce = tx.getNonce().longValueExact();
+        synchronized (this) {
+            if (transactions.contains(hash)) {
+                throw new RpcException(-32000, "already known");
+            }
+            Sender sender = senders.computeIfAbsent(from, key -> new Sender());
+            if (nonce < sender.next) {
+                throw new RpcException(-32000, "nonce too low");
+            }
+            if (!sender.queued.add(nonce)) {
+                throw new RpcException(-32000, "replacement transaction underpriced");
+            }
+            sender.advance();
+            transactions.add(hash);
+        }
+        return hash;
+    }
+
+    private static class Sender {
+        private long next;
+        // Nonces sent ahead of a gap
+        private final TreeSet<Long> queued = new TreeSet<>();
+
+        void advance() {
+            while (queued.remove(next)) {
+                next++;
+            }
+        }
+    }
+
+    private static class Token {
+        private final String symbol;
+        private final int decimals;
+
+        Token(String symbol, int decimals) {
+            this.symbol = symbol;
+            this.decimals = decimals;
+        }
+    }
+
+    private static class RpcException extends Exception {
+        private final int code;
+
+        RpcException(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+}